@@ -0,0 +1,85 @@
+package com.nttdata.bank.benchmark;
+
+import com.nttdata.bank.client.Purchase;
+import com.nttdata.bank.config.BatchProperties;
+import com.nttdata.bank.config.CacheProperties;
+import com.nttdata.bank.config.DownstreamProperties;
+import com.nttdata.bank.config.PortfolioProperties;
+import com.nttdata.bank.config.ReportProperties;
+import com.nttdata.bank.config.ResilienceProperties;
+import com.nttdata.bank.config.WebClientConfig;
+import com.nttdata.bank.service.impl.BankServiceImpl;
+import com.nttdata.bank.support.StubBackend;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * End-to-end {@link BankServiceImpl#grantProductToCustomer} over real HTTP against an in-process
+ * {@link StubBackend}: the customer read, then the purchase save and the customer update in parallel.
+ * The customer is always read from the backend, so the customer cache size does not apply.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class GrantBenchmark {
+
+    private static final int CUSTOMERS = 100;
+
+    private StubBackend backend;
+    private ConnectionProvider connectionProvider;
+    private BankServiceImpl bankService;
+    private final AtomicInteger next = new AtomicInteger();
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        backend = new StubBackend(CUSTOMERS, 1, 1).start();
+
+        DownstreamProperties downstreamProperties = new DownstreamProperties();
+        downstreamProperties.setBaseUrl(backend.baseUrl());
+        CacheProperties cacheProperties = new CacheProperties();
+        MeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+        WebClientConfig config = new WebClientConfig();
+        connectionProvider = config.downstreamConnectionProvider(downstreamProperties);
+        WebClient webClient = config.downstreamWebClient(WebClient.builder(), connectionProvider,
+                config.downstreamGuardFilter(new ResilienceProperties(), meterRegistry), downstreamProperties,
+                meterRegistry);
+        bankService = new BankServiceImpl(webClient, cacheProperties, new BatchProperties(),
+                new PortfolioProperties(), new ReportProperties(), new DownstreamProperties(),
+                Jackson2ObjectMapperBuilder.json().build(), meterRegistry);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        connectionProvider.dispose();
+        backend.close();
+    }
+
+    @Benchmark
+    public Purchase grantProductToCustomer() {
+        int customer = next.getAndIncrement() % CUSTOMERS;
+        return bankService.grantProductToCustomer(String.valueOf(10_000_000 + customer), "CUENTA_BANCARIA_AHORRO")
+                .block();
+    }
+}
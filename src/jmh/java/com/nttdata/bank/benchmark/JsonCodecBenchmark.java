@@ -0,0 +1,144 @@
+package com.nttdata.bank.benchmark;
+
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.nttdata.bank.client.Customer;
+import com.nttdata.bank.client.Purchase;
+import com.nttdata.bank.client.Transaction;
+import com.nttdata.bank.support.StubBackend;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Jackson encode/decode cost of the downstream models, as single objects and as arrays of {@code size}
+ * elements, using an ObjectMapper configured like the one Spring Boot gives the codecs.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class JsonCodecBenchmark {
+
+    @Param({"1000"})
+    public int size;
+
+    private ObjectMapper objectMapper;
+    private JavaType purchaseList;
+    private JavaType customerList;
+    private JavaType transactionList;
+
+    private Purchase purchase;
+    private Customer customer;
+    private Transaction transaction;
+    private List<Purchase> purchases;
+    private List<Customer> customers;
+    private List<Transaction> transactions;
+
+    private byte[] purchaseJson;
+    private byte[] customerJson;
+    private byte[] transactionJson;
+    private byte[] purchasesJson;
+    private byte[] customersJson;
+    private byte[] transactionsJson;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        objectMapper = Jackson2ObjectMapperBuilder.json().build();
+        purchaseList = objectMapper.getTypeFactory().constructCollectionType(List.class, Purchase.class);
+        customerList = objectMapper.getTypeFactory().constructCollectionType(List.class, Customer.class);
+        transactionList = objectMapper.getTypeFactory().constructCollectionType(List.class, Transaction.class);
+
+        // One purchase and one transaction per customer gives arrays of the same length for all three models
+        StubBackend data = new StubBackend(size, 1, 1);
+        customers = data.customers();
+        purchases = data.purchases();
+        transactions = data.transactions();
+        customer = customers.get(0);
+        purchase = purchases.get(0);
+        transaction = transactions.get(0);
+
+        customerJson = objectMapper.writeValueAsBytes(customer);
+        purchaseJson = objectMapper.writeValueAsBytes(purchase);
+        transactionJson = objectMapper.writeValueAsBytes(transaction);
+        customersJson = objectMapper.writeValueAsBytes(customers);
+        purchasesJson = objectMapper.writeValueAsBytes(purchases);
+        transactionsJson = objectMapper.writeValueAsBytes(transactions);
+    }
+
+    @Benchmark
+    public byte[] encodePurchase() throws IOException {
+        return objectMapper.writeValueAsBytes(purchase);
+    }
+
+    @Benchmark
+    public Purchase decodePurchase() throws IOException {
+        return objectMapper.readValue(purchaseJson, Purchase.class);
+    }
+
+    @Benchmark
+    public byte[] encodeCustomer() throws IOException {
+        return objectMapper.writeValueAsBytes(customer);
+    }
+
+    @Benchmark
+    public Customer decodeCustomer() throws IOException {
+        return objectMapper.readValue(customerJson, Customer.class);
+    }
+
+    @Benchmark
+    public byte[] encodeTransaction() throws IOException {
+        return objectMapper.writeValueAsBytes(transaction);
+    }
+
+    @Benchmark
+    public Transaction decodeTransaction() throws IOException {
+        return objectMapper.readValue(transactionJson, Transaction.class);
+    }
+
+    @Benchmark
+    public byte[] encodePurchaseArray() throws IOException {
+        return objectMapper.writeValueAsBytes(purchases);
+    }
+
+    @Benchmark
+    public List<Purchase> decodePurchaseArray() throws IOException {
+        return objectMapper.readValue(purchasesJson, purchaseList);
+    }
+
+    @Benchmark
+    public byte[] encodeCustomerArray() throws IOException {
+        return objectMapper.writeValueAsBytes(customers);
+    }
+
+    @Benchmark
+    public List<Customer> decodeCustomerArray() throws IOException {
+        return objectMapper.readValue(customersJson, customerList);
+    }
+
+    @Benchmark
+    public byte[] encodeTransactionArray() throws IOException {
+        return objectMapper.writeValueAsBytes(transactions);
+    }
+
+    @Benchmark
+    public List<Transaction> decodeTransactionArray() throws IOException {
+        return objectMapper.readValue(transactionsJson, transactionList);
+    }
+}
@@ -0,0 +1,90 @@
+package com.nttdata.bank.benchmark;
+
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.nttdata.bank.client.Purchase;
+import com.nttdata.bank.client.Transaction;
+import com.nttdata.bank.support.StubBackend;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JSON against Smile for the payloads of the large list endpoints: encode and decode time per array of
+ * {@code size} elements. The encoded sizes are printed when each trial starts. Both ObjectMappers are
+ * configured like the ones Spring's codecs use.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class WireFormatBenchmark {
+
+    @Param({"json", "smile"})
+    public String format;
+
+    @Param({"1000"})
+    public int size;
+
+    private ObjectMapper objectMapper;
+    private JavaType transactionList;
+    private JavaType purchaseList;
+
+    private List<Transaction> transactions;
+    private List<Purchase> purchases;
+    private byte[] transactionsEncoded;
+    private byte[] purchasesEncoded;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        objectMapper = "smile".equals(format) ?
+                Jackson2ObjectMapperBuilder.smile().build() :
+                Jackson2ObjectMapperBuilder.json().build();
+        transactionList = objectMapper.getTypeFactory().constructCollectionType(List.class, Transaction.class);
+        purchaseList = objectMapper.getTypeFactory().constructCollectionType(List.class, Purchase.class);
+
+        StubBackend data = new StubBackend(size, 1, 1);
+        transactions = data.transactions();
+        purchases = data.purchases();
+        transactionsEncoded = objectMapper.writeValueAsBytes(transactions);
+        purchasesEncoded = objectMapper.writeValueAsBytes(purchases);
+        System.out.printf("%n%s payload sizes for %d elements: transactions %d bytes, purchases %d bytes%n",
+                format, size, transactionsEncoded.length, purchasesEncoded.length);
+    }
+
+    @Benchmark
+    public byte[] encodeTransactions() throws IOException {
+        return objectMapper.writeValueAsBytes(transactions);
+    }
+
+    @Benchmark
+    public List<Transaction> decodeTransactions() throws IOException {
+        return objectMapper.readValue(transactionsEncoded, transactionList);
+    }
+
+    @Benchmark
+    public byte[] encodePurchases() throws IOException {
+        return objectMapper.writeValueAsBytes(purchases);
+    }
+
+    @Benchmark
+    public List<Purchase> decodePurchases() throws IOException {
+        return objectMapper.readValue(purchasesEncoded, purchaseList);
+    }
+}
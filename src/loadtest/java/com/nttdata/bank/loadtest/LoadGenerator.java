@@ -0,0 +1,167 @@
+package com.nttdata.bank.loadtest;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Open-model load generator: requests are started at a fixed rate whatever the response times are, and
+ * each latency is measured from the moment the request was due, so a stalled server shows up in the
+ * percentiles instead of silently lowering the request rate. Requests that would exceed
+ * {@code maxInFlight} are not sent and are counted as dropped.
+ */
+public class LoadGenerator {
+
+    private static final Duration TICK = Duration.ofMillis(10);
+    private static final long MAX_LATENCY_NANOS = TimeUnit.MINUTES.toNanos(2);
+
+    private final List<Scenario> scenarios;
+    private final int totalWeight;
+    private final int maxInFlight;
+
+    public LoadGenerator(List<Scenario> scenarios, int maxInFlight) {
+        this.scenarios = scenarios;
+        this.totalWeight = scenarios.stream().mapToInt(Scenario::getWeight).sum();
+        this.maxInFlight = maxInFlight;
+    }
+
+    public Map<String, Result> run(double ratePerSecond, Duration duration) {
+        Map<String, Stats> stats = new LinkedHashMap<>();
+        scenarios.forEach(s -> stats.put(s.getName(), new Stats()));
+        AtomicInteger inFlight = new AtomicInteger();
+
+        long start = System.nanoTime();
+        long end = start + duration.toNanos();
+        double intervalNanos = TimeUnit.SECONDS.toNanos(1) / ratePerSecond;
+        long[] issued = {0};
+
+        Disposable ticker = Flux.interval(TICK)
+                .subscribe(tick -> {
+                    long now = System.nanoTime();
+                    long due = (long) ((Math.min(now, end) - start) / intervalNanos);
+                    for (; issued[0] < due; issued[0]++) {
+                        long intendedStart = start + (long) (issued[0] * intervalNanos);
+                        Scenario scenario = pick();
+                        Stats s = stats.get(scenario.getName());
+                        if (inFlight.incrementAndGet() > maxInFlight) {
+                            inFlight.decrementAndGet();
+                            s.dropped.increment();
+                            continue;
+                        }
+                        scenario.getCall().get()
+                                .doFinally(signal -> {
+                                    inFlight.decrementAndGet();
+                                    s.latency.recordValue(Math.min(System.nanoTime() - intendedStart, MAX_LATENCY_NANOS));
+                                })
+                                .subscribe(r -> { }, e -> s.errors.increment(), s.completed::increment);
+                    }
+                });
+
+        sleepUntil(end);
+        ticker.dispose();
+        long drainDeadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+        while (inFlight.get() > 0 && System.nanoTime() < drainDeadline) {
+            sleepUntil(System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(50));
+        }
+        double elapsedSeconds = (System.nanoTime() - start) / 1e9;
+
+        Map<String, Result> results = new LinkedHashMap<>();
+        Histogram all = new Histogram(MAX_LATENCY_NANOS, 3);
+        long completed = 0;
+        long errors = 0;
+        long dropped = 0;
+        for (Map.Entry<String, Stats> entry : stats.entrySet()) {
+            Stats s = entry.getValue();
+            Histogram histogram = s.latency.getIntervalHistogram();
+            all.add(histogram);
+            results.put(entry.getKey(), Result.of(histogram, s.completed.sum(), s.errors.sum(), s.dropped.sum(), elapsedSeconds));
+            completed += s.completed.sum();
+            errors += s.errors.sum();
+            dropped += s.dropped.sum();
+        }
+        results.put("ALL", Result.of(all, completed, errors, dropped, elapsedSeconds));
+        return results;
+    }
+
+    private Scenario pick() {
+        int r = ThreadLocalRandom.current().nextInt(totalWeight);
+        for (Scenario scenario : scenarios) {
+            r -= scenario.getWeight();
+            if (r < 0) {
+                return scenario;
+            }
+        }
+        return scenarios.get(scenarios.size() - 1);
+    }
+
+    private static void sleepUntil(long deadlineNanos) {
+        long remaining;
+        while ((remaining = deadlineNanos - System.nanoTime()) > 0) {
+            try {
+                TimeUnit.NANOSECONDS.sleep(remaining);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    @Getter
+    @AllArgsConstructor
+    public static class Scenario {
+
+        private final String name;
+
+        private final int weight;
+
+        private final Supplier<Mono<?>> call;
+    }
+
+    @Getter
+    @AllArgsConstructor
+    public static class Result {
+
+        private final long completed;
+        private final long errors;
+        private final long dropped;
+        private final double throughput;
+        private final double p50Millis;
+        private final double p99Millis;
+        private final double p999Millis;
+        private final double maxMillis;
+
+        static Result of(Histogram histogram, long completed, long errors, long dropped, double elapsedSeconds) {
+            return new Result(completed, errors, dropped, (completed + errors) / elapsedSeconds,
+                    millis(histogram.getValueAtPercentile(50)),
+                    millis(histogram.getValueAtPercentile(99)),
+                    millis(histogram.getValueAtPercentile(99.9)),
+                    millis(histogram.getMaxValue()));
+        }
+
+        private static double millis(long nanos) {
+            return nanos / 1e6;
+        }
+    }
+
+    private static final class Stats {
+
+        private final Recorder latency = new Recorder(MAX_LATENCY_NANOS, 3);
+        private final LongAdder completed = new LongAdder();
+        private final LongAdder errors = new LongAdder();
+        private final LongAdder dropped = new LongAdder();
+    }
+}
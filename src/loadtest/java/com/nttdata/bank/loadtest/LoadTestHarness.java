@@ -0,0 +1,175 @@
+package com.nttdata.bank.loadtest;
+
+import com.nttdata.bank.BankServiceBc072022Application;
+import com.nttdata.bank.client.Customer;
+import com.nttdata.bank.client.Purchase;
+import com.nttdata.bank.client.enums.ProductCategory;
+import com.nttdata.bank.support.StubBackend;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.convert.DurationStyle;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Starts a {@link StubBackend} in place of the downstream services, boots the application against it and
+ * drives the {@code /bank/**} endpoints with a weighted request mix at a fixed rate.
+ * <p>
+ * Arguments are {@code key=value} pairs: {@code rate} (requests/s, default 200), {@code duration} (30s),
+ * {@code warmup} (10s), {@code latency} (stub latency per downstream call, 20ms), {@code customers} (1000),
+ * {@code purchases} (per customer, 2), {@code transactions} (per purchase, 5), {@code maxInFlight} (1024)
+ * and {@code report} (CSV output, target/loadtest-report.csv).
+ */
+public final class LoadTestHarness {
+
+    private LoadTestHarness() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        Map<String, String> options = parse(args);
+        double rate = Double.parseDouble(options.getOrDefault("rate", "200"));
+        Duration duration = DurationStyle.detectAndParse(options.getOrDefault("duration", "30s"));
+        Duration warmup = DurationStyle.detectAndParse(options.getOrDefault("warmup", "10s"));
+        Duration latency = DurationStyle.detectAndParse(options.getOrDefault("latency", "20ms"));
+        int maxInFlight = Integer.parseInt(options.getOrDefault("maxInFlight", "1024"));
+        Path report = Paths.get(options.getOrDefault("report", "target/loadtest-report.csv"));
+
+        try (StubBackend backend = new StubBackend(
+                Integer.parseInt(options.getOrDefault("customers", "1000")),
+                Integer.parseInt(options.getOrDefault("purchases", "2")),
+                Integer.parseInt(options.getOrDefault("transactions", "5"))).start()) {
+            for (String resource : new String[]{"products", "customers", "purchases", "transactions"}) {
+                backend.latency(resource, latency);
+            }
+
+            ConfigurableApplicationContext app = new SpringApplicationBuilder(BankServiceBc072022Application.class)
+                    .run("--server.port=0",
+                            "--bank.downstream.base-url=" + backend.baseUrl(),
+                            "--spring.cloud.config.enabled=false",
+                            "--eureka.client.enabled=false",
+                            "--bank.rate-limit.enabled=false",
+                            "--logging.level.com.nttdata.bank=WARN");
+            ConnectionProvider connections = ConnectionProvider.builder("load-generator")
+                    .maxConnections(maxInFlight)
+                    .pendingAcquireMaxCount(-1)
+                    .build();
+            try {
+                int port = app.getEnvironment().getRequiredProperty("local.server.port", Integer.class);
+                WebClient client = WebClient.builder()
+                        .baseUrl("http://127.0.0.1:" + port + "/bank")
+                        .clientConnector(new ReactorClientHttpConnector(HttpClient.create(connections)))
+                        .build();
+                LoadGenerator generator = new LoadGenerator(scenarios(client, backend), maxInFlight);
+
+                System.out.printf(Locale.ROOT, "Warming up for %s at %.0f req/s%n", warmup, rate);
+                generator.run(rate, warmup);
+                System.out.printf(Locale.ROOT, "Measuring for %s at %.0f req/s (downstream latency %s)%n", duration, rate, latency);
+                Map<String, LoadGenerator.Result> results = generator.run(rate, duration);
+
+                print(results);
+                write(results, report);
+                System.out.println("Report written to " + report.toAbsolutePath());
+            } finally {
+                connections.dispose();
+                app.close();
+            }
+        }
+    }
+
+    // Request mix roughly following production traffic: lookups dominate, writes are a minority
+    private static List<LoadGenerator.Scenario> scenarios(WebClient client, StubBackend backend) {
+        List<Customer> customers = backend.customers();
+        List<Purchase> purchases = backend.purchases();
+        ProductCategory[] categories = ProductCategory.values();
+        return Arrays.asList(
+                new LoadGenerator.Scenario("GET /customers/{docNumber}", 30, () -> client.get()
+                        .uri("/customers/{docNumber}", random(customers).getDocNumber())
+                        .retrieve().toBodilessEntity()),
+                new LoadGenerator.Scenario("GET /operations/displaypurchases/{id}", 20, () -> client.get()
+                        .uri("/operations/displaypurchases/{id}", random(customers).getId())
+                        .retrieve().toBodilessEntity()),
+                new LoadGenerator.Scenario("GET /products/{category}", 10, () -> client.get()
+                        .uri("/products/{category}", categories[ThreadLocalRandom.current().nextInt(categories.length)])
+                        .retrieve().toBodilessEntity()),
+                new LoadGenerator.Scenario("POST /operations/deposit", 20, () -> {
+                    Purchase purchase = random(purchases);
+                    return client.post()
+                            .uri(b -> b.path("/operations/deposit")
+                                    .queryParam("customerId", purchase.getCustomerId())
+                                    .queryParam("purchaseId", purchase.getId())
+                                    .queryParam("amount", 10)
+                                    .build())
+                            .retrieve().toBodilessEntity();
+                }),
+                new LoadGenerator.Scenario("POST /operations/withdraw", 10, () -> {
+                    Purchase purchase = random(purchases);
+                    return client.post()
+                            .uri(b -> b.path("/operations/withdraw")
+                                    .queryParam("customerId", purchase.getCustomerId())
+                                    .queryParam("purchaseId", purchase.getId())
+                                    .queryParam("amount", 5)
+                                    .build())
+                            .retrieve().toBodilessEntity();
+                }),
+                new LoadGenerator.Scenario("POST /operations/grantproduct", 5, () -> client.post()
+                        .uri(b -> b.path("/operations/grantproduct")
+                                .queryParam("customerDocNumber", random(customers).getDocNumber())
+                                .queryParam("productCategory", categories[ThreadLocalRandom.current().nextInt(categories.length)])
+                                .build())
+                        .retrieve().toBodilessEntity()),
+                new LoadGenerator.Scenario("GET /transactions?limit=50", 5, () -> client.get()
+                        .uri("/transactions?limit=50")
+                        .retrieve().toBodilessEntity()));
+    }
+
+    private static <T> T random(List<T> items) {
+        return items.get(ThreadLocalRandom.current().nextInt(items.size()));
+    }
+
+    private static void print(Map<String, LoadGenerator.Result> results) {
+        System.out.printf(Locale.ROOT, "%n%-40s %9s %7s %7s %9s %9s %9s %9s %9s%n",
+                "endpoint", "completed", "errors", "dropped", "req/s", "p50 ms", "p99 ms", "p999 ms", "max ms");
+        results.forEach((endpoint, r) -> System.out.printf(Locale.ROOT, "%-40s %9d %7d %7d %9.1f %9.2f %9.2f %9.2f %9.2f%n",
+                endpoint, r.getCompleted(), r.getErrors(), r.getDropped(), r.getThroughput(),
+                r.getP50Millis(), r.getP99Millis(), r.getP999Millis(), r.getMaxMillis()));
+    }
+
+    private static void write(Map<String, LoadGenerator.Result> results, Path report) throws IOException {
+        if (report.getParent() != null) {
+            Files.createDirectories(report.getParent());
+        }
+        try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(report))) {
+            out.println("endpoint,completed,errors,dropped,throughput,p50_ms,p99_ms,p999_ms,max_ms");
+            results.forEach((endpoint, r) -> out.printf(Locale.ROOT, "\"%s\",%d,%d,%d,%.2f,%.3f,%.3f,%.3f,%.3f%n",
+                    endpoint, r.getCompleted(), r.getErrors(), r.getDropped(), r.getThroughput(),
+                    r.getP50Millis(), r.getP99Millis(), r.getP999Millis(), r.getMaxMillis()));
+        }
+    }
+
+    private static Map<String, String> parse(String[] args) {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            int eq = arg.indexOf('=');
+            if (eq <= 0) {
+                throw new IllegalArgumentException("Expected key=value but got: " + arg);
+            }
+            options.put(arg.substring(0, eq), arg.substring(eq + 1));
+        }
+        return options;
+    }
+}
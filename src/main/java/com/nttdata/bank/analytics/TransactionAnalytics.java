@@ -0,0 +1,248 @@
+package com.nttdata.bank.analytics;
+
+import com.nttdata.bank.cache.BalanceView;
+import com.nttdata.bank.client.Purchase;
+import com.nttdata.bank.client.Transaction;
+import com.nttdata.bank.client.enums.CustomerType;
+import com.nttdata.bank.client.enums.ProductCategory;
+import com.nttdata.bank.dto.Report;
+import lombok.extern.slf4j.Slf4j;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Tumbling daily and monthly windows of transaction counts and amounts by product category, customer type
+ * and transaction type, updated as transactions are saved.
+ * <p>
+ * Each granularity is a ring of windows indexed by period (epoch day or epoch month modulo the ring size),
+ * and each window is one {@link AtomicLongArray} with a count and an amount in minor units per
+ * dimension combination, so recording is a couple of atomic adds and reading a period costs the same
+ * however many transactions it holds. A window is replaced when its slot is reused for a newer period;
+ * transactions older than the retained periods are ignored.
+ * <p>
+ * Transactions only carry a purchase id, so the category and customer type of each purchase are kept
+ * from the purchases the service reads and writes; transactions of unseen purchases count as UNKNOWN.
+ * <p>
+ * Past transactions are read back from the log once at startup, between {@link #beginLoad()} and
+ * {@link #endLoad()}; meanwhile a transaction is counted once by id, whether it arrives from the log, as it
+ * is saved, or both. Each transaction counts as it was first recorded: later updates and deletes are not
+ * reflected in the windows.
+ */
+@Slf4j
+public class TransactionAnalytics {
+
+    public static final String UNKNOWN = "UNKNOWN";
+
+    private static final ProductCategory[] CATEGORIES = ProductCategory.values();
+    private static final CustomerType[] CUSTOMER_TYPES = CustomerType.values();
+    private static final String[] TRANSACTION_TYPES = {"DEPOSIT", "WITHDRAWAL", "OTHER"};
+
+    // Index 0 of the category and customer type dimensions is UNKNOWN
+    private static final int CUSTOMER_TYPE_SIZE = CUSTOMER_TYPES.length + 1;
+    private static final int TRANSACTION_TYPE_SIZE = TRANSACTION_TYPES.length;
+    private static final int CELLS = (CATEGORIES.length + 1) * CUSTOMER_TYPE_SIZE * TRANSACTION_TYPE_SIZE;
+
+    private final Clock clock;
+    private final ZoneId zone;
+    private final Ring daily;
+    private final Ring monthly;
+    private final ConcurrentMap<String, Integer> purchaseDimensions = new ConcurrentHashMap<>();
+    private final AtomicReference<Set<String>> recordedDuringLoad = new AtomicReference<>();
+
+    public TransactionAnalytics(Clock clock, int retainedDays, int retainedMonths) {
+        this.clock = clock;
+        this.zone = clock.getZone();
+        this.daily = new Ring(retainedDays);
+        this.monthly = new Ring(retainedMonths);
+    }
+
+    public void registerPurchase(Purchase purchase) {
+        if (purchase != null && purchase.getId() != null) {
+            int category = ordinalOf(purchase.getProductCategory(), CATEGORIES);
+            int customerType = ordinalOf(purchase.getCustomerType(), CUSTOMER_TYPES);
+            purchaseDimensions.put(purchase.getId(), category * CUSTOMER_TYPE_SIZE + customerType);
+        }
+    }
+
+    public void forgetPurchase(String purchaseId) {
+        if (purchaseId != null) {
+            purchaseDimensions.remove(purchaseId);
+        }
+    }
+
+    public void beginLoad() {
+        recordedDuringLoad.set(ConcurrentHashMap.newKeySet());
+    }
+
+    public void endLoad() {
+        recordedDuringLoad.set(null);
+    }
+
+    public void record(Transaction transaction) {
+        if (transaction == null) {
+            return;
+        }
+        if (transaction.getAmount() != null && !BalanceView.fitsMinorUnits(transaction.getAmount())) {
+            log.warn("Amount of transaction {} is out of range and left out of the reports", transaction.getId());
+            return;
+        }
+        Set<String> recorded = recordedDuringLoad.get();
+        if (recorded != null && transaction.getId() != null && !recorded.add(transaction.getId())) {
+            return;
+        }
+        Instant emittedAt = transaction.getEmittedAt() != null ? transaction.getEmittedAt().toInstant() : clock.instant();
+        LocalDate day = emittedAt.atZone(zone).toLocalDate();
+        Integer dimensions = transaction.getPurchaseId() != null ? purchaseDimensions.get(transaction.getPurchaseId()) : null;
+        int cell = (dimensions != null ? dimensions : 0) * TRANSACTION_TYPE_SIZE + transactionTypeOf(transaction.getTransactionType());
+        long amount = transaction.getAmount() != null ? BalanceView.toMinorUnits(transaction.getAmount()) : 0;
+
+        daily.add(day.toEpochDay(), currentDay().toEpochDay(), cell, amount);
+        monthly.add(epochMonth(YearMonth.from(day)), epochMonth(YearMonth.from(currentDay())), cell, amount);
+    }
+
+    public Report daily(LocalDate day, boolean byCategory, boolean byCustomerType) {
+        return report("DAILY", day.toString(),
+                daily.read(day.toEpochDay(), currentDay().toEpochDay()), byCategory, byCustomerType);
+    }
+
+    public Report monthly(YearMonth month, boolean byCategory, boolean byCustomerType) {
+        return report("MONTHLY", month.toString(),
+                monthly.read(epochMonth(month), epochMonth(YearMonth.from(currentDay()))), byCategory, byCustomerType);
+    }
+
+    public LocalDate currentDay() {
+        return LocalDate.now(clock);
+    }
+
+    // Folds the dimensions not grouped by into the ones that are; a null window is a period outside retention
+    private static Report report(String granularity, String period, long[] window, boolean byCategory, boolean byCustomerType) {
+        if (window == null) {
+            return null;
+        }
+        int categories = byCategory ? CATEGORIES.length + 1 : 1;
+        int customerTypes = byCustomerType ? CUSTOMER_TYPE_SIZE : 1;
+        long[] counts = new long[categories * customerTypes * TRANSACTION_TYPE_SIZE];
+        long[] amounts = new long[counts.length];
+        for (int category = 0; category <= CATEGORIES.length; category++) {
+            for (int customerType = 0; customerType < CUSTOMER_TYPE_SIZE; customerType++) {
+                for (int type = 0; type < TRANSACTION_TYPE_SIZE; type++) {
+                    int cell = (category * CUSTOMER_TYPE_SIZE + customerType) * TRANSACTION_TYPE_SIZE + type;
+                    int row = ((byCategory ? category : 0) * customerTypes + (byCustomerType ? customerType : 0))
+                            * TRANSACTION_TYPE_SIZE + type;
+                    counts[row] += window[2 * cell];
+                    amounts[row] += window[2 * cell + 1];
+                }
+            }
+        }
+        List<Report.Row> rows = new ArrayList<>();
+        for (int row = 0; row < counts.length; row++) {
+            if (counts[row] == 0) {
+                continue;
+            }
+            int type = row % TRANSACTION_TYPE_SIZE;
+            int customerType = (row / TRANSACTION_TYPE_SIZE) % customerTypes;
+            int category = row / TRANSACTION_TYPE_SIZE / customerTypes;
+            rows.add(new Report.Row(
+                    byCategory ? nameOf(category, CATEGORIES) : null,
+                    byCustomerType ? nameOf(customerType, CUSTOMER_TYPES) : null,
+                    TRANSACTION_TYPES[type], counts[row], BalanceView.toAmount(amounts[row])));
+        }
+        return new Report(granularity, period, rows);
+    }
+
+    private static int transactionTypeOf(String transactionType) {
+        for (int i = 0; i < TRANSACTION_TYPES.length - 1; i++) {
+            if (TRANSACTION_TYPES[i].equalsIgnoreCase(transactionType)) {
+                return i;
+            }
+        }
+        return TRANSACTION_TYPES.length - 1;
+    }
+
+    private static <E extends Enum<E>> int ordinalOf(String name, E[] values) {
+        if (name != null) {
+            for (E value : values) {
+                if (value.name().equalsIgnoreCase(name)) {
+                    return value.ordinal() + 1;
+                }
+            }
+        }
+        return 0;
+    }
+
+    private static <E extends Enum<E>> String nameOf(int index, E[] values) {
+        return index == 0 ? UNKNOWN : values[index - 1].name();
+    }
+
+    private static long epochMonth(YearMonth month) {
+        return month.getYear() * 12L + month.getMonthValue() - 1;
+    }
+
+    private static final class Window {
+
+        private final long period;
+        private final AtomicLongArray cells = new AtomicLongArray(2 * CELLS);
+
+        private Window(long period) {
+            this.period = period;
+        }
+    }
+
+    private static final class Ring {
+
+        private final AtomicReferenceArray<Window> windows;
+
+        private Ring(int size) {
+            this.windows = new AtomicReferenceArray<>(size);
+        }
+
+        void add(long period, long currentPeriod, int cell, long amount) {
+            if (period > currentPeriod || period <= currentPeriod - windows.length()) {
+                return;
+            }
+            int slot = (int) Math.floorMod(period, (long) windows.length());
+            Window window = windows.get(slot);
+            while (window == null || window.period < period) {
+                Window fresh = new Window(period);
+                if (windows.compareAndSet(slot, window, fresh)) {
+                    window = fresh;
+                } else {
+                    window = windows.get(slot);
+                }
+            }
+            if (window.period == period) {
+                window.cells.incrementAndGet(2 * cell);
+                window.cells.addAndGet(2 * cell + 1, amount);
+            }
+        }
+
+        long[] read(long period, long currentPeriod) {
+            if (period > currentPeriod) {
+                return new long[2 * CELLS];
+            }
+            if (period <= currentPeriod - windows.length()) {
+                return null;
+            }
+            Window window = windows.get((int) Math.floorMod(period, (long) windows.length()));
+            long[] snapshot = new long[2 * CELLS];
+            if (window != null && window.period == period) {
+                for (int i = 0; i < snapshot.length; i++) {
+                    snapshot[i] = window.cells.get(i);
+                }
+            }
+            return snapshot;
+        }
+    }
+}
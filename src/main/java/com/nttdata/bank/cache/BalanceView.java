@@ -0,0 +1,133 @@
+package com.nttdata.bank.cache;
+
+import com.nttdata.bank.client.Purchase;
+import lombok.extern.slf4j.Slf4j;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.Map;
+import java.util.OptionalLong;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Materialized view of purchase balances keyed by purchase id, held as {@code long} minor units (cents).
+ * <p>
+ * Every purchase this service writes downstream replaces its entry, so the view follows each deposit and
+ * withdrawal that goes through it. Purchases read from downstream only seed entries that are missing, so a
+ * late read never overwrites a newer write. Balances changed elsewhere, by another replica or directly in
+ * the purchases service, are picked up by {@link #rebuild(Flux)}, which callers run periodically: it
+ * replaces the view with the full purchase list, keeping the entries written while it was read.
+ * A missing entry means "unknown", never zero: callers fall back to the downstream purchase. So is a balance
+ * too large for {@code long} minor units, which the view leaves out with a warning.
+ */
+@Slf4j
+public class BalanceView {
+
+    private static final int MINOR_UNIT_SCALE = 2;
+    private static final BigDecimal MAX_AMOUNT = BigDecimal.valueOf(Long.MAX_VALUE, MINOR_UNIT_SCALE);
+
+    private final ConcurrentMap<String, Long> balances = new ConcurrentHashMap<>();
+    private final WritesDuringReload changedDuringRebuild = new WritesDuringReload();
+
+    // Balance in minor units, empty when the purchase is not in the view
+    public OptionalLong get(String purchaseId) {
+        Long balance = purchaseId == null ? null : balances.get(purchaseId);
+        return balance == null ? OptionalLong.empty() : OptionalLong.of(balance);
+    }
+
+    public synchronized void put(Purchase purchase) {
+        if (purchase == null || purchase.getId() == null) {
+            return;
+        }
+        if (fits(purchase)) {
+            balances.put(purchase.getId(), minorUnitsOf(purchase));
+        } else {
+            balances.remove(purchase.getId());
+        }
+        changedDuringRebuild.record(purchase.getId());
+    }
+
+    // Adds a purchase read from downstream unless it is already known; the view may be fresher than the read
+    public void seed(Purchase purchase) {
+        if (purchase != null && purchase.getId() != null && fits(purchase)) {
+            balances.putIfAbsent(purchase.getId(), minorUnitsOf(purchase));
+        }
+    }
+
+    public synchronized void remove(String purchaseId) {
+        if (purchaseId == null) {
+            return;
+        }
+        balances.remove(purchaseId);
+        changedDuringRebuild.record(purchaseId);
+    }
+
+    /**
+     * Replaces the view with the purchases emitted by {@code purchases}, keeping those written or removed
+     * meanwhile. A rebuild started while another is running completes empty without subscribing.
+     *
+     * @return the number of purchases read
+     */
+    public Mono<Long> rebuild(Flux<Purchase> purchases) {
+        return Mono.defer(() -> {
+            synchronized (this) {
+                if (!changedDuringRebuild.begin()) {
+                    return Mono.empty();
+                }
+            }
+            return purchases
+                    .filter(purchase -> purchase.getId() != null && fits(purchase))
+                    .collectMap(Purchase::getId, BalanceView::minorUnitsOf)
+                    .map(this::apply)
+                    .doFinally(signal -> {
+                        synchronized (this) {
+                            changedDuringRebuild.end();
+                        }
+                    });
+        });
+    }
+
+    public int size() {
+        return balances.size();
+    }
+
+    private synchronized long apply(Map<String, Long> fresh) {
+        balances.keySet().removeIf(id -> !fresh.containsKey(id) && !changedDuringRebuild.contains(id));
+        fresh.forEach((id, balance) -> {
+            if (!changedDuringRebuild.contains(id)) {
+                balances.put(id, balance);
+            }
+        });
+        return fresh.size();
+    }
+
+    private static boolean fits(Purchase purchase) {
+        if (purchase.getBalance() == null || fitsMinorUnits(purchase.getBalance())) {
+            return true;
+        }
+        log.warn("Balance of purchase {} is out of range and left out of the balance view", purchase.getId());
+        return false;
+    }
+
+    private static long minorUnitsOf(Purchase purchase) {
+        return toMinorUnits(purchase.getBalance() != null ? purchase.getBalance() : 0);
+    }
+
+    // Whether toMinorUnits can represent the amount
+    public static boolean fitsMinorUnits(double amount) {
+        return !Double.isNaN(amount) && !Double.isInfinite(amount)
+                && BigDecimal.valueOf(amount).abs().compareTo(MAX_AMOUNT) <= 0;
+    }
+
+    // Throws ArithmeticException when the amount does not fit; see fitsMinorUnits
+    public static long toMinorUnits(double amount) {
+        return BigDecimal.valueOf(amount).setScale(MINOR_UNIT_SCALE, RoundingMode.HALF_EVEN).unscaledValue().longValueExact();
+    }
+
+    public static double toAmount(long minorUnits) {
+        return BigDecimal.valueOf(minorUnits, MINOR_UNIT_SCALE).doubleValue();
+    }
+}
@@ -0,0 +1,147 @@
+package com.nttdata.bank.cache;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import com.nttdata.bank.client.Customer;
+
+import java.time.Duration;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded, time-expiring customer cache reachable by both {@code id} and {@code docNumber}.
+ * <p>
+ * Entries live in a single Caffeine cache keyed by id, so each {@link Customer} is stored once and
+ * size/TTL eviction applies to it as a whole. The docNumber index only maps to ids and is pruned from
+ * the removal listener; a dangling index entry simply resolves to a miss.
+ * <p>
+ * Writes and evictions stamp the customer's id with the next value of a clock. Reads fill the cache
+ * through {@link #fill(Customer, long)} with the clock value taken before their downstream call was sent,
+ * and the fill is dropped if that customer was written or evicted since, so a response that may predate a
+ * concurrent write is never cached while fills of other customers go through. Once more ids are stamped
+ * than the cache holds, the stamps are dropped in one go and fills of reads sent before that are dropped
+ * with them.
+ */
+public class CustomerCache {
+
+    private final Cache<String, Customer> byId;
+    private final ConcurrentMap<String, String> idByDocNumber = new ConcurrentHashMap<>();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final AtomicLong clock = new AtomicLong();
+    private final ConcurrentMap<String, Long> writtenAt = new ConcurrentHashMap<>();
+    private final AtomicLong prunedUpTo = new AtomicLong();
+    private final long maxStamps;
+
+    public CustomerCache(long maxSize, Duration ttl) {
+        this.maxStamps = Math.max(1, maxSize);
+        this.byId = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(ttl)
+                .executor(Runnable::run)
+                .removalListener(this::onRemoval)
+                .recordStats()
+                .build();
+    }
+
+    public Customer getById(String id) {
+        return record(id == null ? null : byId.getIfPresent(id));
+    }
+
+    public Customer getByDocNumber(String docNumber) {
+        String id = docNumber == null ? null : idByDocNumber.get(docNumber);
+        Customer customer = id == null ? null : byId.getIfPresent(id);
+        return record(customer != null && docNumber.equals(customer.getDocNumber()) ? customer : null);
+    }
+
+    public long generation() {
+        return clock.get();
+    }
+
+    // Stores the customer returned by a write
+    public void put(Customer customer) {
+        if (customer == null || customer.getId() == null) {
+            return;
+        }
+        stamp(customer.getId());
+        index(byId.asMap().put(customer.getId(), customer), customer);
+    }
+
+    /**
+     * Stores a customer read from downstream, unless that customer was written or evicted after
+     * {@code readGeneration} was taken. The check and the store are atomic for the customer's entry.
+     */
+    public void fill(Customer customer, long readGeneration) {
+        if (customer == null || customer.getId() == null) {
+            return;
+        }
+        AtomicReference<Customer> previous = new AtomicReference<>();
+        Customer stored = byId.asMap().compute(customer.getId(), (id, existing) -> {
+            previous.set(existing);
+            Long written = writtenAt.get(id);
+            boolean stale = readGeneration < prunedUpTo.get() || written != null && written > readGeneration;
+            return stale ? existing : customer;
+        });
+        if (stored == customer) {
+            index(previous.get(), customer);
+        }
+    }
+
+    public void evict(String id) {
+        if (id != null) {
+            stamp(id);
+            byId.invalidate(id);
+        }
+    }
+
+    public long hitCount() {
+        return hits.sum();
+    }
+
+    public long missCount() {
+        return misses.sum();
+    }
+
+    public long evictionCount() {
+        return byId.stats().evictionCount();
+    }
+
+    public long size() {
+        return byId.estimatedSize();
+    }
+
+    private void stamp(String id) {
+        writtenAt.put(id, clock.incrementAndGet());
+        if (writtenAt.size() > maxStamps) {
+            // The floor is raised before the stamps below it go, so a fill always sees one or the other
+            long floor = clock.get();
+            prunedUpTo.accumulateAndGet(floor, Math::max);
+            writtenAt.values().removeIf(stamp -> stamp <= floor);
+        }
+    }
+
+    private void index(Customer previous, Customer customer) {
+        if (previous != null && previous.getDocNumber() != null
+                && !previous.getDocNumber().equals(customer.getDocNumber())) {
+            idByDocNumber.remove(previous.getDocNumber(), previous.getId());
+        }
+        if (customer.getDocNumber() != null) {
+            idByDocNumber.put(customer.getDocNumber(), customer.getId());
+        }
+    }
+
+    private Customer record(Customer customer) {
+        (customer == null ? misses : hits).increment();
+        return customer;
+    }
+
+    private void onRemoval(String id, Customer customer, RemovalCause cause) {
+        if (cause != RemovalCause.REPLACED && customer != null && customer.getDocNumber() != null) {
+            idByDocNumber.remove(customer.getDocNumber(), id);
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package com.nttdata.bank.cache;
+
+import com.nttdata.bank.client.Customer;
+import com.nttdata.bank.client.enums.CustomerType;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * In-memory index of customers by {@link CustomerType}, kept current by the customer reads and writes the
+ * service makes and replaced periodically from the full customer list.
+ * <p>
+ * Each type maps to a concurrent map of customers by id, so listing a type is a weakly consistent walk of
+ * that map without locking. Writes and refreshes are serialized on the index. Customers written while a
+ * refresh is reading the full list keep their written state, since the list may predate the write.
+ * Until the first refresh completes the index is not {@link #isLoaded() loaded} and callers should ask
+ * downstream instead.
+ * <p>
+ * The index also holds the last known state of each customer by id and document number, which callers may
+ * serve while downstream is refusing customer reads.
+ */
+public class CustomerTypeIndex {
+
+    private final Map<CustomerType, ConcurrentMap<String, Customer>> byType = new EnumMap<>(CustomerType.class);
+    private final ConcurrentMap<String, Customer> byId = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Customer> byDocNumber = new ConcurrentHashMap<>();
+    private final WritesDuringReload changedDuringRefresh = new WritesDuringReload();
+    private volatile boolean loaded;
+
+    public CustomerTypeIndex() {
+        for (CustomerType type : CustomerType.values()) {
+            byType.put(type, new ConcurrentHashMap<>());
+        }
+    }
+
+    public boolean isLoaded() {
+        return loaded;
+    }
+
+    public Collection<Customer> customers(CustomerType type) {
+        return byType.get(type).values();
+    }
+
+    public Customer get(String id) {
+        return id == null ? null : byId.get(id);
+    }
+
+    public Customer getByDocNumber(String docNumber) {
+        return docNumber == null ? null : byDocNumber.get(docNumber);
+    }
+
+    public synchronized void put(Customer customer) {
+        if (customer == null || customer.getId() == null) {
+            return;
+        }
+        index(customer);
+        changedDuringRefresh.record(customer.getId());
+    }
+
+    public synchronized void remove(String id) {
+        if (id == null) {
+            return;
+        }
+        unindex(id);
+        changedDuringRefresh.record(id);
+    }
+
+    /**
+     * Replaces the index with the customers emitted by {@code source}, keeping those written or removed
+     * meanwhile. A refresh started while another is running completes empty without subscribing.
+     *
+     * @return the number of customers indexed afterwards
+     */
+    public Mono<Long> refresh(Flux<Customer> source) {
+        return Mono.defer(() -> {
+            synchronized (this) {
+                if (!changedDuringRefresh.begin()) {
+                    return Mono.empty();
+                }
+            }
+            return source
+                    .filter(customer -> customer.getId() != null)
+                    .collectMap(Customer::getId)
+                    .map(this::apply)
+                    .doFinally(signal -> {
+                        synchronized (this) {
+                            changedDuringRefresh.end();
+                        }
+                    });
+        });
+    }
+
+    public long size() {
+        return byId.size();
+    }
+
+    private synchronized long apply(Map<String, Customer> fresh) {
+        for (String id : byId.keySet()) {
+            if (!fresh.containsKey(id) && !changedDuringRefresh.contains(id)) {
+                unindex(id);
+            }
+        }
+        for (Customer customer : fresh.values()) {
+            if (!changedDuringRefresh.contains(customer.getId())) {
+                index(customer);
+            }
+        }
+        loaded = true;
+        return byId.size();
+    }
+
+    private void index(Customer customer) {
+        Customer previous = byId.put(customer.getId(), customer);
+        if (previous != null && previous.getCustomerType() != null
+                && previous.getCustomerType() != customer.getCustomerType()) {
+            byType.get(previous.getCustomerType()).remove(customer.getId());
+        }
+        if (previous != null && previous.getDocNumber() != null) {
+            byDocNumber.remove(previous.getDocNumber(), previous);
+        }
+        if (customer.getDocNumber() != null) {
+            byDocNumber.put(customer.getDocNumber(), customer);
+        }
+        if (customer.getCustomerType() != null) {
+            byType.get(customer.getCustomerType()).put(customer.getId(), customer);
+        }
+    }
+
+    private void unindex(String id) {
+        Customer previous = byId.remove(id);
+        if (previous != null && previous.getCustomerType() != null) {
+            byType.get(previous.getCustomerType()).remove(id);
+        }
+        if (previous != null && previous.getDocNumber() != null) {
+            byDocNumber.remove(previous.getDocNumber(), previous);
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package com.nttdata.bank.cache;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Bounded, time-expiring store of operation results keyed by client-supplied idempotency keys.
+ * <p>
+ * The first request for a key starts the operation and stores it as a cached {@link Mono}; a retry with
+ * the same key joins it while it is running and replays its result once it has completed. The operation
+ * keeps running if the first caller goes away, so a retry after a client timeout finds the outcome instead
+ * of writing twice. Failed operations are forgotten so they can be retried. Reusing a key for a different
+ * request is rejected with 422.
+ */
+public class IdempotencyCache {
+
+    private final Cache<String, Entry> entries;
+    private final LongAdder replays = new LongAdder();
+
+    public IdempotencyCache(long maxSize, Duration ttl) {
+        this.entries = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(ttl)
+                .executor(Runnable::run)
+                .build();
+    }
+
+    /**
+     * @param operation   scopes the key, so the same key sent to two endpoints names two requests
+     * @param fingerprint the request parameters; a key may only be reused with the same ones
+     */
+    @SuppressWarnings("unchecked")
+    public <T> Mono<T> execute(String operation, String key, String fingerprint, Supplier<Mono<T>> call) {
+        return Mono.defer(() -> {
+            String id = operation + ':' + key;
+            ConcurrentMap<String, Entry> map = entries.asMap();
+            AtomicReference<Entry> created = new AtomicReference<>();
+            Entry entry = map.computeIfAbsent(id, k -> {
+                Entry e = new Entry(fingerprint, call.get()
+                        .doOnError(error -> map.remove(k, created.get()))
+                        .cache());
+                created.set(e);
+                return e;
+            });
+            if (entry != created.get()) {
+                if (!entry.fingerprint.equals(fingerprint)) {
+                    return Mono.error(new ResponseStatusException(HttpStatus.UNPROCESSABLE_ENTITY,
+                            "Idempotency-Key " + key + " was already used for a different request"));
+                }
+                replays.increment();
+            }
+            return (Mono<T>) entry.result;
+        });
+    }
+
+    public long replayCount() {
+        return replays.sum();
+    }
+
+    public long size() {
+        return entries.estimatedSize();
+    }
+
+    private static final class Entry {
+
+        private final String fingerprint;
+        private final Mono<?> result;
+
+        private Entry(String fingerprint, Mono<?> result) {
+            this.fingerprint = fingerprint;
+            this.result = result;
+        }
+    }
+}
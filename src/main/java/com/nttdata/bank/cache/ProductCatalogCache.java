@@ -0,0 +1,126 @@
+package com.nttdata.bank.cache;
+
+import com.nttdata.bank.client.Product;
+import com.nttdata.bank.client.enums.ProductCategory;
+import lombok.extern.slf4j.Slf4j;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+/**
+ * Whole-catalog snapshot of the downstream products, indexed by {@link ProductCategory}.
+ * <p>
+ * The snapshot is loaded with a single {@code GET /products}, reloaded in the background once it
+ * is older than {@code refreshAhead} and reloaded in the foreground once it is older than {@code ttl}.
+ * Product writes call {@link #invalidate()}, which also discards any load started before the write.
+ * When a foreground load fails (e.g. the products circuit is open), the last loaded snapshot is served
+ * instead, however old it is.
+ */
+@Slf4j
+public class ProductCatalogCache {
+
+    private final Supplier<Flux<Product>> loader;
+    private final long ttlNanos;
+    private final long refreshAheadNanos;
+
+    private final AtomicReference<Snapshot> snapshot = new AtomicReference<>();
+    private final AtomicReference<Snapshot> lastLoaded = new AtomicReference<>();
+    private final AtomicReference<Mono<Snapshot>> inFlight = new AtomicReference<>();
+    private final AtomicLong generation = new AtomicLong();
+
+    public ProductCatalogCache(Supplier<Flux<Product>> loader, Duration ttl, Duration refreshAhead) {
+        this.loader = loader;
+        this.ttlNanos = ttl.toNanos();
+        this.refreshAheadNanos = Math.min(refreshAhead.toNanos(), ttlNanos);
+    }
+
+    public Flux<Product> all() {
+        return current().flatMapIterable(s -> s.all);
+    }
+
+    public Mono<Product> get(ProductCategory category) {
+        return current().flatMap(s -> Mono.justOrEmpty(s.byCategory.get(category)));
+    }
+
+    public Mono<Void> refresh() {
+        return load().then();
+    }
+
+    public void invalidate() {
+        generation.incrementAndGet();
+        snapshot.set(null);
+        inFlight.set(null);
+    }
+
+    private Mono<Snapshot> current() {
+        return Mono.defer(() -> {
+            Snapshot s = snapshot.get();
+            if (s == null) {
+                return loadOrFallback();
+            }
+            long age = System.nanoTime() - s.loadedAt;
+            if (age >= ttlNanos) {
+                return loadOrFallback();
+            }
+            if (age >= refreshAheadNanos) {
+                load().subscribe(r -> { }, e -> log.warn("Background refresh of product catalog failed: {}", e.toString()));
+            }
+            return Mono.just(s);
+        });
+    }
+
+    private Mono<Snapshot> loadOrFallback() {
+        return load().onErrorResume(e -> {
+            Snapshot fallback = lastLoaded.get();
+            if (fallback == null) {
+                return Mono.error(e);
+            }
+            log.warn("Serving stale product catalog, load failed: {}", e.toString());
+            return Mono.just(fallback);
+        });
+    }
+
+    private Mono<Snapshot> load() {
+        Mono<Snapshot> running = inFlight.get();
+        if (running != null) {
+            return running;
+        }
+        long startedAt = generation.get();
+        AtomicReference<Mono<Snapshot>> self = new AtomicReference<>();
+        Mono<Snapshot> next = loader.get()
+                .collectList()
+                .map(Snapshot::new)
+                .doOnNext(s -> {
+                    lastLoaded.set(s);
+                    if (generation.get() == startedAt) {
+                        snapshot.set(s);
+                    }
+                })
+                .doFinally(signal -> inFlight.compareAndSet(self.get(), null))
+                .cache();
+        self.set(next);
+        return inFlight.compareAndSet(null, next) ? next : load();
+    }
+
+    private static final class Snapshot {
+
+        private final List<Product> all;
+        private final Map<ProductCategory, Product> byCategory = new EnumMap<>(ProductCategory.class);
+        private final long loadedAt = System.nanoTime();
+
+        private Snapshot(List<Product> products) {
+            this.all = Collections.unmodifiableList(products);
+            products.stream()
+                    .filter(p -> p.getProductCategory() != null)
+                    .forEach(p -> byCategory.putIfAbsent(p.getProductCategory(), p));
+        }
+    }
+}
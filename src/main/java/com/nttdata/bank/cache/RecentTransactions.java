@@ -0,0 +1,154 @@
+package com.nttdata.bank.cache;
+
+import com.nttdata.bank.client.Transaction;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * The newest transactions of each purchase, grouped by customer, so a portfolio is served without scanning
+ * the whole transaction log.
+ * <p>
+ * Each purchase keeps at most {@code capacity} transactions, newest first by emission date, as an immutable
+ * list replaced on every write, so readers never lock. Writes are serialized on the index and keyed by
+ * transaction id, so a transaction saved twice or updated is held once, in its latest form; transactions
+ * already dropped do not come back when a newer one is deleted or moved back in time until the next load.
+ * {@link #load(Flux)} builds the index from the whole log and then replaces it, keeping the written state of
+ * the transactions written or deleted meanwhile; callers run it at startup and then periodically, so
+ * transactions written by other replicas or directly in the transactions service show up. Until the first
+ * load completes the index is not {@link #isLoaded() loaded} and callers should scan the log instead.
+ */
+public class RecentTransactions {
+
+    private static final Comparator<Transaction> NEWEST_FIRST = Comparator.comparing(Transaction::getEmittedAt,
+            Comparator.nullsFirst(Comparator.<Date>naturalOrder())).reversed();
+
+    private final int capacity;
+    private volatile ConcurrentMap<String, ConcurrentMap<String, List<Transaction>>> byCustomer = new ConcurrentHashMap<>();
+    private Map<String, Transaction> byId = new HashMap<>();
+    private final WritesDuringReload changedDuringLoad = new WritesDuringReload();
+    private volatile boolean loaded;
+
+    public RecentTransactions(int capacity) {
+        this.capacity = Math.max(1, capacity);
+    }
+
+    public boolean isLoaded() {
+        return loaded;
+    }
+
+    // Newest first, at most perPurchase (up to the capacity) per purchase of the customer
+    public Map<String, List<Transaction>> recent(String customerId, int perPurchase) {
+        Map<String, List<Transaction>> recent = new LinkedHashMap<>();
+        ConcurrentMap<String, List<Transaction>> purchases = byCustomer.get(customerId);
+        if (purchases != null) {
+            purchases.forEach((purchaseId, transactions) ->
+                    recent.put(purchaseId, transactions.subList(0, Math.min(perPurchase, transactions.size()))));
+        }
+        return recent;
+    }
+
+    public synchronized void put(Transaction transaction) {
+        if (transaction == null || transaction.getId() == null) {
+            return;
+        }
+        unlink(transaction.getId());
+        link(transaction);
+        changedDuringLoad.record(transaction.getId());
+    }
+
+    public synchronized void remove(String id) {
+        if (id == null) {
+            return;
+        }
+        unlink(id);
+        changedDuringLoad.record(id);
+    }
+
+    /**
+     * Replaces the index with the newest transactions emitted by {@code source}, keeping those written or
+     * deleted meanwhile. A load started while another is running completes empty without subscribing.
+     *
+     * @return the number of transactions read
+     */
+    public Mono<Long> load(Flux<Transaction> source) {
+        return Mono.defer(() -> {
+            synchronized (this) {
+                if (!changedDuringLoad.begin()) {
+                    return Mono.empty();
+                }
+            }
+            RecentTransactions fresh = new RecentTransactions(capacity);
+            return source
+                    .filter(transaction -> transaction.getId() != null)
+                    .doOnNext(transaction -> {
+                        fresh.unlink(transaction.getId());
+                        fresh.link(transaction);
+                    })
+                    .count()
+                    .doOnNext(count -> apply(fresh))
+                    .doFinally(signal -> {
+                        synchronized (this) {
+                            changedDuringLoad.end();
+                        }
+                    });
+        });
+    }
+
+    private synchronized void apply(RecentTransactions fresh) {
+        for (String id : changedDuringLoad.ids()) {
+            fresh.unlink(id);
+            Transaction written = byId.get(id);
+            if (written != null) {
+                fresh.link(written);
+            }
+        }
+        byId = fresh.byId;
+        byCustomer = fresh.byCustomer;
+        loaded = true;
+    }
+
+    private void link(Transaction transaction) {
+        if (transaction.getCustomerId() == null || transaction.getPurchaseId() == null) {
+            return;
+        }
+        ConcurrentMap<String, List<Transaction>> purchases =
+                byCustomer.computeIfAbsent(transaction.getCustomerId(), id -> new ConcurrentHashMap<>());
+        List<Transaction> transactions = new ArrayList<>(purchases.getOrDefault(transaction.getPurchaseId(), List.of()));
+        transactions.add(transaction);
+        transactions.sort(NEWEST_FIRST);
+        byId.put(transaction.getId(), transaction);
+        while (transactions.size() > capacity) {
+            byId.remove(transactions.remove(transactions.size() - 1).getId());
+        }
+        purchases.put(transaction.getPurchaseId(), List.copyOf(transactions));
+    }
+
+    private void unlink(String id) {
+        Transaction previous = byId.remove(id);
+        if (previous == null) {
+            return;
+        }
+        ConcurrentMap<String, List<Transaction>> purchases = byCustomer.get(previous.getCustomerId());
+        List<Transaction> transactions = purchases != null ? purchases.get(previous.getPurchaseId()) : null;
+        if (transactions == null) {
+            return;
+        }
+        List<Transaction> remaining = new ArrayList<>(transactions);
+        remaining.removeIf(transaction -> id.equals(transaction.getId()));
+        if (remaining.isEmpty()) {
+            purchases.remove(previous.getPurchaseId());
+        } else {
+            purchases.put(previous.getPurchaseId(), List.copyOf(remaining));
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package com.nttdata.bank.cache;
+
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Ids written or removed while a view is being reloaded from downstream. The reload may have read them
+ * before the write, so the view keeps its own state for them when the reload is applied.
+ * <p>
+ * Not thread-safe: the owning view guards it with the lock its writes and {@code apply} step hold.
+ */
+final class WritesDuringReload {
+
+    private Set<String> ids;
+
+    // Starts tracking; false when a reload is already running, in which case the caller should skip
+    boolean begin() {
+        if (ids != null) {
+            return false;
+        }
+        ids = new HashSet<>();
+        return true;
+    }
+
+    void record(String id) {
+        if (ids != null) {
+            ids.add(id);
+        }
+    }
+
+    boolean contains(String id) {
+        return ids != null && ids.contains(id);
+    }
+
+    Set<String> ids() {
+        return ids != null ? ids : Set.of();
+    }
+
+    void end() {
+        ids = null;
+    }
+}
@@ -0,0 +1,94 @@
+package com.nttdata.bank.codec;
+
+import com.fasterxml.jackson.annotation.JsonFilter;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.ser.impl.SimpleBeanPropertyFilter;
+import com.fasterxml.jackson.databind.ser.impl.SimpleFilterProvider;
+import org.springframework.core.ResolvableType;
+import org.springframework.http.MediaType;
+import org.springframework.http.codec.json.Jackson2JsonEncoder;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.util.MimeType;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * JSON encoder that honours a {@code fields} query parameter: every model object in the response (see
+ * {@link #FILTER_ID}) is written with only the listed properties. Wrappers such as pages and portfolios
+ * are written whole, so {@code fields=id,balance} keeps their structure and projects the items.
+ * <p>
+ * Works for single values, JSON arrays and streamed NDJSON alike, since all of them obtain their
+ * {@link ObjectWriter} through {@link #customizeWriter}. Without the parameter the output is unchanged.
+ */
+public class ProjectingJackson2JsonEncoder extends Jackson2JsonEncoder {
+
+    public static final String FILTER_ID = "fields";
+
+    private static final String FIELDS_PARAM = "fields";
+    private static final String FIELDS_HINT = ProjectingJackson2JsonEncoder.class.getName() + ".fields";
+
+    public ProjectingJackson2JsonEncoder(ObjectMapper objectMapper, MimeType... mimeTypes) {
+        super(objectMapper, mimeTypes);
+    }
+
+    /**
+     * Default filters for an ObjectMapper whose model classes carry {@link Projectable}: everything is
+     * written unless a request asks for a projection.
+     */
+    public static SimpleFilterProvider defaultFilters() {
+        return new SimpleFilterProvider().setDefaultFilter(SimpleBeanPropertyFilter.serializeAll());
+    }
+
+    @Override
+    public Map<String, Object> getEncodeHints(ResolvableType actualType, ResolvableType elementType,
+                                              MediaType mediaType, ServerHttpRequest request, ServerHttpResponse response) {
+        Map<String, Object> hints = super.getEncodeHints(actualType, elementType, mediaType, request, response);
+        Set<String> fields = fields(request.getQueryParams().get(FIELDS_PARAM));
+        if (fields.isEmpty()) {
+            return hints;
+        }
+        Map<String, Object> withFields = new HashMap<>(hints);
+        withFields.put(FIELDS_HINT, fields);
+        return withFields;
+    }
+
+    @Override
+    protected ObjectWriter customizeWriter(ObjectWriter writer, MimeType mimeType, ResolvableType elementType,
+                                           Map<String, Object> hints) {
+        @SuppressWarnings("unchecked")
+        Set<String> fields = hints != null ? (Set<String>) hints.get(FIELDS_HINT) : null;
+        if (fields == null) {
+            return writer;
+        }
+        return writer.with(new SimpleFilterProvider()
+                .addFilter(FILTER_ID, SimpleBeanPropertyFilter.filterOutAllExcept(fields))
+                .setDefaultFilter(SimpleBeanPropertyFilter.serializeAll()));
+    }
+
+    private static Set<String> fields(List<String> values) {
+        Set<String> fields = new LinkedHashSet<>();
+        if (values != null) {
+            for (String value : values) {
+                Arrays.stream(value.split(","))
+                        .map(String::trim)
+                        .filter(field -> !field.isEmpty())
+                        .forEach(fields::add);
+            }
+        }
+        return fields;
+    }
+
+    /**
+     * Mix-in that marks a model class as subject to projection.
+     */
+    @JsonFilter(FILTER_ID)
+    public interface Projectable {
+    }
+}
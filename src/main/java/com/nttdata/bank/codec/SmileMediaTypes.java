@@ -0,0 +1,21 @@
+package com.nttdata.bank.codec;
+
+import org.springframework.http.MediaType;
+
+/**
+ * Media types of the Smile binary JSON format, as handled by Spring's Jackson Smile codecs.
+ */
+public final class SmileMediaTypes {
+
+    public static final String APPLICATION_SMILE_VALUE = "application/x-jackson-smile";
+
+    // A stream of Smile values, the binary counterpart of NDJSON
+    public static final String APPLICATION_STREAM_SMILE_VALUE = "application/stream+x-jackson-smile";
+
+    public static final MediaType APPLICATION_SMILE = MediaType.parseMediaType(APPLICATION_SMILE_VALUE);
+
+    public static final MediaType APPLICATION_STREAM_SMILE = MediaType.parseMediaType(APPLICATION_STREAM_SMILE_VALUE);
+
+    private SmileMediaTypes() {
+    }
+}
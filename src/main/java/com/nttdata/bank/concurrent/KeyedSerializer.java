@@ -0,0 +1,77 @@
+package com.nttdata.bank.concurrent;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Runs asynchronous operations one at a time per key, in subscription order, without blocking a thread.
+ * <p>
+ * Each key maps to the completion signal of the last operation queued for it. A new operation swaps
+ * itself in as the tail and subscribes once the previous tail has terminated, so operations on the same
+ * key form a queue while different keys never wait for each other. The entry is removed when the last
+ * queued operation terminates. A caller that cancels does not cut its operation short, since a write may
+ * already be on the wire; an operation whose caller left before its turn is skipped. Operations still
+ * waiting are exported as {@code <name>.waiting} and the time they wait for their turn as
+ * {@code <name>.wait}.
+ */
+public class KeyedSerializer {
+
+    private final ConcurrentMap<String, Sinks.Empty<Void>> tails = new ConcurrentHashMap<>();
+    private final AtomicInteger waiting = new AtomicInteger();
+    private final Timer waitTimer;
+
+    public KeyedSerializer(String name, MeterRegistry meterRegistry) {
+        Gauge.builder(name + ".waiting", waiting, AtomicInteger::get)
+                .description("Operations queued behind another operation on the same key")
+                .register(meterRegistry);
+        this.waitTimer = Timer.builder(name + ".wait")
+                .description("Time an operation waits for the previous operation on the same key")
+                .register(meterRegistry);
+    }
+
+    public <T> Mono<T> serialize(String key, Supplier<Mono<T>> operation) {
+        return Mono.defer(() -> {
+            Sinks.Empty<Void> done = Sinks.empty();
+            Sinks.Empty<Void> previous = tails.put(key, done);
+            AtomicBoolean abandoned = new AtomicBoolean();
+            // Skipped when its caller left while it was queued; once started it runs whatever the caller does
+            Mono<T> turn = Mono.defer(() -> abandoned.get() ? Mono.<T>empty() : operation.get());
+            Mono<T> section;
+            if (previous == null) {
+                waitTimer.record(0, TimeUnit.NANOSECONDS);
+                section = turn;
+            } else {
+                long queuedAt = System.nanoTime();
+                waiting.incrementAndGet();
+                // Hop off the previous operation's completion so a long queue of failing operations cannot recurse
+                section = previous.asMono()
+                        .publishOn(Schedulers.parallel())
+                        .doFinally(signal -> {
+                            waiting.decrementAndGet();
+                            waitTimer.record(System.nanoTime() - queuedAt, TimeUnit.NANOSECONDS);
+                        })
+                        .then(turn);
+            }
+            // cache() keeps the section subscribed when the caller cancels, so the key is only released
+            // once the operation has really finished
+            return section
+                    .doFinally(signal -> {
+                        tails.remove(key, done);
+                        done.tryEmitEmpty();
+                    })
+                    .cache()
+                    .doOnCancel(() -> abandoned.set(true));
+        });
+    }
+}
@@ -0,0 +1,24 @@
+package com.nttdata.bank.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+@Data
+@ConfigurationProperties(prefix = "bank.access-log")
+public class AccessLogProperties {
+
+    private boolean enabled = true;
+
+    // Fraction of requests logged, between 0 and 1
+    private double sampleRate = 1.0;
+
+    // Sample rates by route pattern as mapped in the controller (e.g. "/bank/customers/{docNumber}")
+    private Map<String, Double> routes = new LinkedHashMap<>();
+
+    // Requests slower than this are always logged, as are server errors
+    private Duration slowThreshold = Duration.ofSeconds(1);
+}
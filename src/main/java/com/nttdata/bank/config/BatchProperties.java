@@ -0,0 +1,13 @@
+package com.nttdata.bank.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+@Data
+@ConfigurationProperties(prefix = "bank.batch")
+public class BatchProperties {
+
+    // Maximum number of records written to downstream at the same time; also bounds how many
+    // records are read ahead from the request body
+    private int concurrency = 8;
+}
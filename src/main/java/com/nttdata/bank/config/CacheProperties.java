@@ -0,0 +1,62 @@
+package com.nttdata.bank.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+@Data
+@ConfigurationProperties(prefix = "bank.cache")
+public class CacheProperties {
+
+    private Products products = new Products();
+
+    private Customers customers = new Customers();
+
+    private Balances balances = new Balances();
+
+    private Idempotency idempotency = new Idempotency();
+
+    @Data
+    public static class Products {
+
+        // Time after which the catalog snapshot is no longer served
+        private Duration ttl = Duration.ofMinutes(10);
+
+        // Age at which a read triggers a background reload of the snapshot
+        private Duration refreshAhead = Duration.ofMinutes(8);
+    }
+
+    @Data
+    public static class Customers {
+
+        // Maximum number of customers kept; beyond it Caffeine evicts the entries it estimates are least
+        // likely to be read again (W-TinyLFU, by recency and frequency)
+        private long maxSize = 10_000;
+
+        // Time after which a cached customer is fetched again from downstream
+        private Duration ttl = Duration.ofMinutes(5);
+
+        // Interval at which the index of customers by type is reloaded from downstream; zero disables
+        // the index and type listings are always read from downstream
+        private Duration typeIndexRefresh = Duration.ofMinutes(1);
+    }
+
+    @Data
+    public static class Balances {
+
+        // Interval at which the balance view is rebuilt from the full purchase list, picking up balances
+        // changed outside this instance; zero keeps only the rebuild at startup
+        private Duration refresh = Duration.ofMinutes(5);
+    }
+
+    @Data
+    public static class Idempotency {
+
+        // Maximum number of idempotency keys remembered, evicted like the customers above
+        private long maxSize = 100_000;
+
+        // Time during which a retry with the same key replays the first result
+        private Duration ttl = Duration.ofHours(24);
+    }
+}
@@ -0,0 +1,84 @@
+package com.nttdata.bank.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+@Data
+@ConfigurationProperties(prefix = "bank.downstream")
+public class DownstreamProperties {
+
+    private String baseUrl = "http://localhost:9000";
+
+    private Duration connectTimeout = Duration.ofSeconds(2);
+
+    // Default time allowed between sending a request and receiving its response
+    private Duration responseTimeout = Duration.ofSeconds(5);
+
+    // Response timeouts by path prefix (e.g. "/transactions"), the longest matching prefix wins
+    private Map<String, Duration> routeResponseTimeouts = new LinkedHashMap<>();
+
+    // Request gzip responses and decompress them transparently
+    private boolean compression = true;
+
+    // Ask the backend for Smile (binary JSON) responses ahead of JSON; a backend without Smile answers JSON
+    private boolean smile = false;
+
+    // Negotiate cleartext HTTP/2 (h2c) with the backend, falling back to HTTP/1.1
+    private boolean http2 = false;
+
+    private Pool pool = new Pool();
+
+    private Hedging hedging = new Hedging();
+
+    @Data
+    public static class Pool {
+
+        private int maxConnections = 500;
+
+        // Requests allowed to wait for a connection once the pool is exhausted
+        private int pendingAcquireMaxCount = 1000;
+
+        private Duration pendingAcquireTimeout = Duration.ofSeconds(5);
+
+        private Duration maxIdleTime = Duration.ofSeconds(30);
+
+        private Duration maxLifeTime = Duration.ofMinutes(5);
+
+        // Interval of the background task that closes idle and expired connections
+        private Duration evictionInterval = Duration.ofSeconds(30);
+
+        // Publish reactor.netty.connection.provider.* gauges (active, idle, pending)
+        private boolean metrics = true;
+    }
+
+    @Data
+    public static class Hedging {
+
+        // Send a second attempt when a read on a hedged route answers slower than usual
+        private boolean enabled = false;
+
+        // Hedged routes (e.g. "/customers/{docNumber}") with the percentile, between 0 and 100, of recent
+        // first-attempt latency after which the second attempt is sent
+        private Map<String, Double> routes = new LinkedHashMap<>();
+
+        private Duration minDelay = Duration.ofMillis(10);
+
+        private Duration maxDelay = Duration.ofSeconds(2);
+
+        // Period of latency samples the delay is computed from; it is recomputed once per window
+        private Duration window = Duration.ofSeconds(10);
+
+        // Samples a window needs before its percentile is trusted; routes are not hedged until then
+        private long minSamples = 50;
+
+        // Second attempts allowed per first attempt; capped at 1 so hedging never more than doubles the load
+        private double budgetRatio = 0.1;
+
+        // Unused budget a route may bank for a burst of slow responses, in second attempts
+        private int budgetReserve = 10;
+    }
+}
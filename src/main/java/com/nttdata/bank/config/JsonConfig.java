@@ -0,0 +1,40 @@
+package com.nttdata.bank.config;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.nttdata.bank.client.Customer;
+import com.nttdata.bank.client.Product;
+import com.nttdata.bank.client.Purchase;
+import com.nttdata.bank.client.Transaction;
+import com.nttdata.bank.codec.ProjectingJackson2JsonEncoder;
+import org.springframework.boot.autoconfigure.jackson.Jackson2ObjectMapperBuilderCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.codec.ServerCodecConfigurer;
+import org.springframework.web.reactive.config.WebFluxConfigurer;
+
+@Configuration
+public class JsonConfig implements WebFluxConfigurer {
+
+    private final ObjectMapper objectMapper;
+
+    public JsonConfig(ObjectMapper objectMapper) {
+        this.objectMapper = objectMapper;
+    }
+
+    // Model classes can be projected with ?fields=; the default filter writes them whole everywhere else,
+    // including request bodies sent downstream
+    @Bean
+    public static Jackson2ObjectMapperBuilderCustomizer projectionCustomizer() {
+        return builder -> builder
+                .mixIn(Customer.class, ProjectingJackson2JsonEncoder.Projectable.class)
+                .mixIn(Product.class, ProjectingJackson2JsonEncoder.Projectable.class)
+                .mixIn(Purchase.class, ProjectingJackson2JsonEncoder.Projectable.class)
+                .mixIn(Transaction.class, ProjectingJackson2JsonEncoder.Projectable.class)
+                .filters(ProjectingJackson2JsonEncoder.defaultFilters());
+    }
+
+    @Override
+    public void configureHttpMessageCodecs(ServerCodecConfigurer configurer) {
+        configurer.defaultCodecs().jackson2JsonEncoder(new ProjectingJackson2JsonEncoder(objectMapper));
+    }
+}
@@ -0,0 +1,24 @@
+package com.nttdata.bank.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+@Data
+@ConfigurationProperties(prefix = "bank.portfolio")
+public class PortfolioProperties {
+
+    // Time each section (purchases, transactions) may take before the portfolio is returned without it
+    private Duration sectionTimeout = Duration.ofSeconds(2);
+
+    // Transactions returned per purchase when the request does not ask for a number
+    private int recentTransactions = 5;
+
+    // Upper bound for the number of transactions per purchase a request may ask for
+    private int maxRecentTransactions = 50;
+
+    // Interval at which the recent transactions index is rebuilt from the transaction log, picking up
+    // transactions written outside this instance; zero keeps only the load at startup
+    private Duration recentTransactionsRefresh = Duration.ofMinutes(5);
+}
@@ -0,0 +1,42 @@
+package com.nttdata.bank.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+@Data
+@ConfigurationProperties(prefix = "bank.rate-limit")
+public class RateLimitProperties {
+
+    // Off by default: behind the gateway every request has the gateway's remote address, so limits keyed on it
+    // would be shared by all callers. Enable it together with clientHeader, or when clients connect directly
+    private boolean enabled = false;
+
+    // Clients are keyed by remote address. Only name a header here when every request arrives through a
+    // gateway that authenticates the caller and overwrites this header, since otherwise a client could pick
+    // a fresh key per request or spend another client's tokens
+    private String clientHeader;
+
+    // Token buckets by request path pattern (e.g. "/bank/operations/**"); the most specific matching
+    // pattern applies and requests matching none are not limited
+    private Map<String, Limit> routes = new LinkedHashMap<>();
+
+    // Maximum number of clients tracked per route (see CacheProperties.Customers.maxSize for eviction)
+    private long maxClients = 100_000;
+
+    // Time after which the bucket of a client that sent nothing is dropped (and so starts full)
+    private Duration idleTimeout = Duration.ofMinutes(10);
+
+    @Data
+    public static class Limit {
+
+        // Requests a client may send in a burst; zero leaves the route unlimited
+        private int capacity;
+
+        // Sustained requests per second a client may send
+        private double refillPerSecond;
+    }
+}
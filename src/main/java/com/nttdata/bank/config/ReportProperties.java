@@ -0,0 +1,15 @@
+package com.nttdata.bank.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+@Data
+@ConfigurationProperties(prefix = "bank.reports")
+public class ReportProperties {
+
+    // Days, counting today, for which a daily report is kept
+    private int retainedDays = 35;
+
+    // Months, counting the current one, for which a monthly report is kept
+    private int retainedMonths = 13;
+}
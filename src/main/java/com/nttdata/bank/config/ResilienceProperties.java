@@ -0,0 +1,48 @@
+package com.nttdata.bank.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+@Data
+@ConfigurationProperties(prefix = "bank.resilience")
+public class ResilienceProperties {
+
+    private Bulkhead bulkhead = new Bulkhead();
+
+    private CircuitBreaker circuitBreaker = new CircuitBreaker();
+
+    @Data
+    public static class Bulkhead {
+
+        // Concurrent in-flight calls allowed per downstream resource
+        private int maxConcurrentCalls = 100;
+
+        // Time a call may wait for a free slot before failing; zero fails immediately
+        private Duration maxWaitDuration = Duration.ZERO;
+
+        // Per-resource overrides of maxConcurrentCalls, keyed by resource (e.g. "transactions")
+        private Map<String, Integer> resources = new LinkedHashMap<>();
+    }
+
+    @Data
+    public static class CircuitBreaker {
+
+        private float failureRateThreshold = 50;
+
+        private float slowCallRateThreshold = 80;
+
+        private Duration slowCallDurationThreshold = Duration.ofSeconds(2);
+
+        private int slidingWindowSize = 50;
+
+        private int minimumNumberOfCalls = 20;
+
+        private Duration waitDurationInOpenState = Duration.ofSeconds(10);
+
+        private int permittedNumberOfCallsInHalfOpenState = 5;
+    }
+}
@@ -0,0 +1,126 @@
+package com.nttdata.bank.config;
+
+import com.nttdata.bank.codec.SmileMediaTypes;
+import com.nttdata.bank.downstream.DownstreamGuardFilter;
+import com.nttdata.bank.downstream.DownstreamMetricsFilter;
+import io.github.resilience4j.micrometer.tagged.TaggedBulkheadMetrics;
+import io.github.resilience4j.micrometer.tagged.TaggedCircuitBreakerMetrics;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.netty.channel.ChannelOption;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.MediaType;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.web.reactive.function.client.ClientRequest;
+import org.springframework.web.reactive.function.client.ExchangeFilterFunction;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.netty.http.HttpProtocol;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.http.client.HttpClientRequest;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+@Configuration
+public class WebClientConfig {
+
+    @Bean(destroyMethod = "dispose")
+    public ConnectionProvider downstreamConnectionProvider(DownstreamProperties properties) {
+        DownstreamProperties.Pool pool = properties.getPool();
+        return ConnectionProvider.builder("downstream")
+                .maxConnections(pool.getMaxConnections())
+                .pendingAcquireMaxCount(pool.getPendingAcquireMaxCount())
+                .pendingAcquireTimeout(pool.getPendingAcquireTimeout())
+                .maxIdleTime(pool.getMaxIdleTime())
+                .maxLifeTime(pool.getMaxLifeTime())
+                .evictInBackground(pool.getEvictionInterval())
+                .metrics(pool.isMetrics())
+                .build();
+    }
+
+    @Bean
+    public DownstreamGuardFilter downstreamGuardFilter(ResilienceProperties properties, MeterRegistry meterRegistry) {
+        DownstreamGuardFilter guardFilter = new DownstreamGuardFilter(properties);
+        TaggedCircuitBreakerMetrics.ofCircuitBreakerRegistry(guardFilter.getCircuitBreakerRegistry()).bindTo(meterRegistry);
+        TaggedBulkheadMetrics.ofBulkheadRegistry(guardFilter.getBulkheadRegistry()).bindTo(meterRegistry);
+        return guardFilter;
+    }
+
+    @Bean
+    public WebClient downstreamWebClient(WebClient.Builder webClientBuilder, ConnectionProvider downstreamConnectionProvider,
+                                         DownstreamGuardFilter downstreamGuardFilter, DownstreamProperties properties,
+                                         MeterRegistry meterRegistry) {
+        HttpClient httpClient = HttpClient.create(downstreamConnectionProvider)
+                .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, (int) properties.getConnectTimeout().toMillis())
+                .responseTimeout(properties.getResponseTimeout())
+                .compress(properties.isCompression());
+        if (properties.isHttp2()) {
+            httpClient = httpClient.protocol(HttpProtocol.H2C, HttpProtocol.HTTP11);
+        }
+        WebClient.Builder builder = webClientBuilder
+                .baseUrl(properties.getBaseUrl())
+                .clientConnector(new ReactorClientHttpConnector(httpClient))
+                .filter(new DownstreamMetricsFilter(meterRegistry))
+                .filter(downstreamGuardFilter)
+                .filter(routeResponseTimeouts(properties));
+        if (properties.isSmile()) {
+            builder = builder.filter(preferSmile());
+        }
+        return builder.build();
+    }
+
+    // Puts the Smile counterpart ahead of each JSON type the request accepts; request bodies stay JSON
+    private static ExchangeFilterFunction preferSmile() {
+        return (request, next) -> next.exchange(ClientRequest.from(request)
+                .headers(headers -> {
+                    List<MediaType> accept = headers.getAccept().isEmpty() ?
+                            Collections.singletonList(MediaType.APPLICATION_JSON) : headers.getAccept();
+                    List<MediaType> preferred = new ArrayList<>();
+                    for (MediaType mediaType : accept) {
+                        if (MediaType.APPLICATION_NDJSON.isCompatibleWith(mediaType) && !mediaType.isWildcardSubtype()) {
+                            preferred.add(SmileMediaTypes.APPLICATION_STREAM_SMILE);
+                        } else if (MediaType.APPLICATION_JSON.isCompatibleWith(mediaType) && !mediaType.isWildcardSubtype()) {
+                            preferred.add(SmileMediaTypes.APPLICATION_SMILE);
+                        }
+                    }
+                    preferred.addAll(accept);
+                    headers.setAccept(preferred);
+                })
+                .build());
+    }
+
+    // Overrides the client-wide response timeout for requests whose path matches a configured prefix
+    private static ExchangeFilterFunction routeResponseTimeouts(DownstreamProperties properties) {
+        return (request, next) -> {
+            Duration timeout = responseTimeoutFor(request.url().getPath(), properties.getRouteResponseTimeouts());
+            if (timeout == null) {
+                return next.exchange(request);
+            }
+            return next.exchange(ClientRequest.from(request)
+                    .httpRequest(httpRequest -> {
+                        Object nativeRequest = httpRequest.getNativeRequest();
+                        if (nativeRequest instanceof HttpClientRequest) {
+                            ((HttpClientRequest) nativeRequest).responseTimeout(timeout);
+                        }
+                    })
+                    .build());
+        };
+    }
+
+    private static Duration responseTimeoutFor(String path, Map<String, Duration> routeTimeouts) {
+        String bestPrefix = null;
+        Duration timeout = null;
+        for (Map.Entry<String, Duration> route : routeTimeouts.entrySet()) {
+            String prefix = route.getKey();
+            if (path.startsWith(prefix) && (bestPrefix == null || prefix.length() > bestPrefix.length())) {
+                bestPrefix = prefix;
+                timeout = route.getValue();
+            }
+        }
+        return timeout;
+    }
+}
@@ -1,42 +1,79 @@
 package com.nttdata.bank.controller;
 
+import com.fasterxml.jackson.databind.JsonNode;
+import com.nttdata.bank.cache.IdempotencyCache;
 import com.nttdata.bank.client.Customer;
 import com.nttdata.bank.client.Product;
 import com.nttdata.bank.client.Purchase;
 import com.nttdata.bank.client.Transaction;
+import com.nttdata.bank.codec.SmileMediaTypes;
+import com.nttdata.bank.config.CacheProperties;
+import com.nttdata.bank.dto.Balance;
+import com.nttdata.bank.dto.BatchResult;
+import com.nttdata.bank.dto.Page;
+import com.nttdata.bank.dto.Portfolio;
+import com.nttdata.bank.dto.Report;
 import com.nttdata.bank.service.BankService;
-import lombok.extern.slf4j.Slf4j;
-import org.springframework.beans.factory.annotation.Autowired;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ResponseStatusException;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
-@Slf4j
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.Locale;
+import java.util.function.Supplier;
+
 @RestController
 @RequestMapping("/bank")
 public class BankController {
 
+    private static final String IDEMPOTENCY_KEY = "Idempotency-Key";
+    private static final int MAX_IDEMPOTENCY_KEY_LENGTH = 255;
+
     private final BankService bankService;
+    private final IdempotencyCache idempotencyCache;
 
-    public BankController(BankService bankService) {
+    public BankController(BankService bankService, CacheProperties cacheProperties, MeterRegistry meterRegistry) {
         this.bankService = bankService;
+        this.idempotencyCache = new IdempotencyCache(cacheProperties.getIdempotency().getMaxSize(),
+                cacheProperties.getIdempotency().getTtl());
+        FunctionCounter.builder("bank.idempotency.replays", idempotencyCache, IdempotencyCache::replayCount)
+                .description("Requests answered from an earlier request with the same Idempotency-Key")
+                .register(meterRegistry);
+        Gauge.builder("bank.idempotency.size", idempotencyCache, IdempotencyCache::size)
+                .register(meterRegistry);
     }
 
     //    PRODUCTS ********
     // -------------------Retrieve all products
 
-    @GetMapping("/products")
+    @GetMapping(value = "/products",
+            produces = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_NDJSON_VALUE,
+                    SmileMediaTypes.APPLICATION_SMILE_VALUE, SmileMediaTypes.APPLICATION_STREAM_SMILE_VALUE})
     public Flux<Product> retrieveAllProducts() {
-        log.info("Retrieving all products");
         return bankService.findAllProducts();
     }
 
+    // -------------------Retrieve a page of products
+
+    @GetMapping(value = "/products", params = "limit")
+    public Mono<Page<Product>> retrieveProductsPage(@RequestParam(value = "limit") int limit,
+                                                    @RequestParam(value = "cursor", required = false) String cursor) {
+        return bankService.findProductsPage(limit, cursor);
+    }
+
     // -------------------Retrieve a product by category
 
     @GetMapping("/products/{category}")
     public Mono<Product> retrieveProductByCategory(@PathVariable("category") String category) {
-        log.info("Retrieving product with category: " + category.toUpperCase());
         return bankService.findProductByCategory(category);
     }
 
@@ -44,7 +81,6 @@ public class BankController {
 
     @PostMapping("/products")
     public Mono<Product> saveProduct(@RequestBody Product product) {
-        log.info("Registering new product - category: " + product.getProductCategory() + ", type: " + product.getProductType());
         return bankService.saveProduct(product);
     }
 
@@ -52,7 +88,6 @@ public class BankController {
 
     @PutMapping("/products")
     public Mono<ResponseEntity<Product>> updateProduct(@RequestBody Product product) {
-        log.info("Updating product with id: " + product.getId());
         return bankService.updateProduct(product)
                 .map(ResponseEntity::ok)
                 .defaultIfEmpty(ResponseEntity.badRequest().build());
@@ -62,7 +97,6 @@ public class BankController {
 
     @DeleteMapping("/products/{id}")
     public Mono<ResponseEntity<Void>> deleteProduct(@PathVariable("id") String id) {
-        log.info("Deleting product with id: " + id);
         return bankService.deleteProduct(id)
                 .map( r -> ResponseEntity.ok().<Void>build())
                 .defaultIfEmpty(ResponseEntity.notFound().build());
@@ -71,36 +105,54 @@ public class BankController {
     //    CUSTOMERS ********
     // -------------------Retrieve all customers
 
-    @GetMapping("/customers")
+    @GetMapping(value = "/customers",
+            produces = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_NDJSON_VALUE,
+                    SmileMediaTypes.APPLICATION_SMILE_VALUE, SmileMediaTypes.APPLICATION_STREAM_SMILE_VALUE})
     public Flux<Customer> retrieveAllCustomers() {
-        log.info("Retrieving all customers");
         return bankService.findAllCustomers();
     }
 
+    // -------------------Retrieve a page of customers
+
+    @GetMapping(value = "/customers", params = "limit")
+    public Mono<Page<Customer>> retrieveCustomersPage(@RequestParam(value = "limit") int limit,
+                                                      @RequestParam(value = "cursor", required = false) String cursor) {
+        return bankService.findCustomersPage(limit, cursor);
+    }
+
     // -------------------Retrieve all customers by type
 
-    @GetMapping("/customers/type")
+    @GetMapping(value = "/customers/type",
+            produces = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_NDJSON_VALUE,
+                    SmileMediaTypes.APPLICATION_SMILE_VALUE, SmileMediaTypes.APPLICATION_STREAM_SMILE_VALUE})
     public Flux<Customer> retrieveAllByType(@RequestParam(value = "type", required = false) String type) {
-        log.info("Retrieving customers with type: " + type.toUpperCase());
-        return type.isEmpty() ?
+        return type == null || type.isEmpty() ?
                 bankService.findAllCustomers() :
-                bankService.findAllCustomersByCustomerType(type.toUpperCase());
+                bankService.findAllCustomersByCustomerType(type.toUpperCase(Locale.ROOT));
     }
 
     // -------------------Retrieve single customer by docNumber
     @GetMapping("/customers/{docNumber}")
     public Mono<ResponseEntity<Customer>> retrieveById(@PathVariable("docNumber") String docNumber) {
-        log.info("Retrieving customer with doc-number: " + docNumber);
         Mono<Customer> customer = bankService.findCustomerByDocNumber(docNumber);
         return customer.map(ResponseEntity::ok)
                 .defaultIfEmpty(ResponseEntity.notFound().build());
     }
 
+    // -------------------Retrieve a customer with purchases and recent transactions
+
+    @GetMapping("/customers/{docNumber}/portfolio")
+    public Mono<ResponseEntity<Portfolio>> retrievePortfolio(@PathVariable("docNumber") String docNumber,
+                                                             @RequestParam(value = "transactions", required = false) Integer transactions) {
+        return bankService.findCustomerPortfolio(docNumber, transactions)
+                .map(ResponseEntity::ok)
+                .defaultIfEmpty(ResponseEntity.notFound().build());
+    }
+
     // -------------------Create a customer
 
     @PostMapping("/customers")
     public Mono<Customer> save(@RequestBody Customer customer) {
-        log.info("Registering new customer - name: " + customer.getName() + ", type: " + customer.getCustomerType());
         return bankService.saveCustomer(customer);
     }
 
@@ -108,7 +160,6 @@ public class BankController {
 
     @PutMapping("/customers")
     public Mono<ResponseEntity<Customer>> update(@RequestBody Customer customer) {
-        log.info("Updating customer with id: " + customer.getId());
         return bankService.updateCustomer(customer)
                 .map(ResponseEntity::ok)
                 .defaultIfEmpty(ResponseEntity.badRequest().build());
@@ -118,7 +169,6 @@ public class BankController {
 
     @DeleteMapping("/customers/{id}")
     public Mono<ResponseEntity<Void>> delete(@PathVariable("id") String id) {
-        log.info("Deleting customer with id: " + id);
         return bankService.deleteCustomer(id)
                 .map(r -> ResponseEntity.ok().<Void>build())
                 .defaultIfEmpty(ResponseEntity.notFound().build());
@@ -127,17 +177,25 @@ public class BankController {
     //    PURCHASES ********
     // -------------------Retrieve all purchases
 
-    @GetMapping("/purchases")
+    @GetMapping(value = "/purchases",
+            produces = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_NDJSON_VALUE,
+                    SmileMediaTypes.APPLICATION_SMILE_VALUE, SmileMediaTypes.APPLICATION_STREAM_SMILE_VALUE})
     public Flux<Purchase> retrieveAllPurchases() {
-        log.info("Retrieving all purchases");
         return bankService.findAllPurchases();
     }
 
+    // -------------------Retrieve a page of purchases
+
+    @GetMapping(value = "/purchases", params = "limit")
+    public Mono<Page<Purchase>> retrievePurchasesPage(@RequestParam(value = "limit") int limit,
+                                                      @RequestParam(value = "cursor", required = false) String cursor) {
+        return bankService.findPurchasesPage(limit, cursor);
+    }
+
     // -------------------Retrieve single purchase by id
 
     @GetMapping("/purchases/{id}")
     public Mono<ResponseEntity<Purchase>> retrievePurchaseById(@PathVariable("id") String id) {
-        log.info("Retrieving purchase with id: " + id);
         Mono<Purchase> purchase = bankService.findPurchaseById(id);
         return purchase.map(ResponseEntity::ok)
                 .defaultIfEmpty(ResponseEntity.notFound().build());
@@ -147,7 +205,6 @@ public class BankController {
 
     @PostMapping("/purchases")
     public Mono<Purchase> savePurchase(@RequestBody Purchase purchase) {
-        log.info("Registering new purchase - customer: " + purchase.getCustomerId() + ", product: " + purchase.getProductId());
         return bankService.savePurchase(purchase);
     }
 
@@ -155,7 +212,6 @@ public class BankController {
 
     @PutMapping("/purchases")
     public Mono<ResponseEntity<Purchase>> updatePurchase(@RequestBody Purchase purchase) {
-        log.info("Updating purchase with id: " + purchase.getId());
         return bankService.updatePurchase(purchase)
                 .map(ResponseEntity::ok)
                 .defaultIfEmpty(ResponseEntity.badRequest().build());
@@ -165,7 +221,6 @@ public class BankController {
 
     @DeleteMapping("/purchases/{id}")
     public Mono<ResponseEntity<Void>> deletePurchase(@PathVariable("id") String id) {
-        log.info("Deleting purchase with id: " + id);
         return bankService.deletePurchase(id)
                 .map(p -> ResponseEntity.ok().<Void>build())
                 .defaultIfEmpty(ResponseEntity.notFound().build());
@@ -174,17 +229,25 @@ public class BankController {
     //    TRANSACTIONS ********
     // -------------------Retrieve all transactions
 
-    @GetMapping("/transactions")
+    @GetMapping(value = "/transactions",
+            produces = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_NDJSON_VALUE,
+                    SmileMediaTypes.APPLICATION_SMILE_VALUE, SmileMediaTypes.APPLICATION_STREAM_SMILE_VALUE})
     public Flux<Transaction> retrieveAllTransactions() {
-        log.info("Retrieving all transactions");
         return bankService.findAllTransactions();
     }
 
+    // -------------------Retrieve a page of transactions
+
+    @GetMapping(value = "/transactions", params = "limit")
+    public Mono<Page<Transaction>> retrieveTransactionsPage(@RequestParam(value = "limit") int limit,
+                                                            @RequestParam(value = "cursor", required = false) String cursor) {
+        return bankService.findTransactionsPage(limit, cursor);
+    }
+
     // -------------------Retrieve single transaction by id
 
     @GetMapping("/transactions/{id}")
     public Mono<ResponseEntity<Transaction>> retrieveTransactionById(@PathVariable("id") String id) {
-        log.info("Retrieving transaction with id: " + id);
         Mono<Transaction> transaction = bankService.findTransactionById(id);
         return transaction.map(ResponseEntity::ok)
                 .defaultIfEmpty(ResponseEntity.notFound().build());
@@ -194,15 +257,31 @@ public class BankController {
 
     @PostMapping("/transactions")
     public Mono<Transaction> saveTransaction(@RequestBody Transaction transaction) {
-        log.info("Registering new transaction - customer: " + transaction.getCustomerId() + ", purchase: " + transaction.getPurchaseId());
         return bankService.saveTransaction(transaction);
     }
 
+    // -------------------Create transactions in batch (NDJSON in, NDJSON out)
+
+    @PostMapping(value = "/transactions/batch",
+            consumes = MediaType.APPLICATION_NDJSON_VALUE,
+            produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public Flux<BatchResult<Transaction>> saveTransactions(@RequestBody Flux<String> lines) {
+        // Lines rather than transactions, so that one malformed line fails only its own record
+        return bankService.saveTransactions(lines);
+    }
+
+    // A JSON array has to be well formed as a whole; each element is still decoded on its own
+    @PostMapping(value = "/transactions/batch",
+            consumes = MediaType.APPLICATION_JSON_VALUE,
+            produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public Flux<BatchResult<Transaction>> saveTransactionsFromArray(@RequestBody Flux<JsonNode> transactions) {
+        return bankService.saveTransactions(transactions.map(JsonNode::toString));
+    }
+
     // -------------------Update a transaction
 
     @PutMapping("/transactions")
     public Mono<ResponseEntity<Transaction>> updateTransaction(@RequestBody Transaction transaction) {
-        log.info("Updating transaction with id: " + transaction.getId());
         return bankService.updateTransaction(transaction)
                 .map(ResponseEntity::ok)
                 .defaultIfEmpty(ResponseEntity.badRequest().build());
@@ -212,7 +291,6 @@ public class BankController {
 
     @DeleteMapping("/transactions/{id}")
     public Mono<ResponseEntity<Void>> deleteTransaction(@PathVariable("id") String id) {
-        log.info("Deleting transaction with id: " + id);
         return bankService.deleteTransaction(id)
                 .map(p -> ResponseEntity.ok().<Void>build())
                 .defaultIfEmpty(ResponseEntity.notFound().build());
@@ -222,9 +300,29 @@ public class BankController {
     // -------------------Otorgar producto (activo/pasivo) a cliente
 
     @PostMapping("/operations/grantproduct")
-    public Flux<Purchase> grantProductToCustomer(@RequestParam(value = "customerDocNumber") String customerDocNumber,
-                                                 @RequestParam(value = "productCategory") String productCategory) {
-        return bankService.grantProductToCustomer(customerDocNumber, productCategory);
+    public Mono<Purchase> grantProductToCustomer(@RequestParam(value = "customerDocNumber") String customerDocNumber,
+                                                 @RequestParam(value = "productCategory") String productCategory,
+                                                 @RequestHeader(value = IDEMPOTENCY_KEY, required = false) String idempotencyKey) {
+        return idempotent("grantproduct", idempotencyKey, customerDocNumber + '|' + productCategory,
+                () -> bankService.grantProductToCustomer(customerDocNumber, productCategory));
+    }
+
+    // -------------------Otorgar productos a varios clientes
+
+    @PostMapping(value = "/operations/grantproduct/batch",
+            consumes = MediaType.APPLICATION_NDJSON_VALUE,
+            produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public Flux<BatchResult<Purchase>> grantProducts(@RequestBody Flux<String> lines) {
+        // Lines rather than requests, so that one malformed line fails only its own record
+        return bankService.grantProducts(lines);
+    }
+
+    // A JSON array has to be well formed as a whole; each element is still decoded on its own
+    @PostMapping(value = "/operations/grantproduct/batch",
+            consumes = MediaType.APPLICATION_JSON_VALUE,
+            produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public Flux<BatchResult<Purchase>> grantProductsFromArray(@RequestBody Flux<JsonNode> requests) {
+        return bankService.grantProducts(requests.map(JsonNode::toString));
     }
 
     // -------------------Mostrar adquisiciones de cliente
@@ -237,19 +335,62 @@ public class BankController {
     // -------------------Depositar
 
     @PostMapping("/operations/deposit")
-    public Flux<Transaction> deposit(@RequestParam(value = "customerId") String customerId,
+    public Mono<Transaction> deposit(@RequestParam(value = "customerId") String customerId,
                                      @RequestParam(value = "purchaseId") String purchaseId,
-                                     @RequestParam(value = "amount") double amount) {
-        return bankService.deposit(customerId, purchaseId, amount);
+                                     @RequestParam(value = "amount") double amount,
+                                     @RequestHeader(value = IDEMPOTENCY_KEY, required = false) String idempotencyKey) {
+        return idempotent("deposit", idempotencyKey, customerId + '|' + purchaseId + '|' + amount,
+                () -> bankService.deposit(customerId, purchaseId, amount));
     }
 
     // -------------------Retirar
 
     @PostMapping("/operations/withdraw")
-    public Flux<Transaction> withdraw(@RequestParam(value = "customerId") String customerId,
-                                     @RequestParam(value = "purchaseId") String purchaseId,
-                                     @RequestParam(value = "amount") double amount) {
-        return bankService.deposit(customerId, purchaseId, amount);
+    public Mono<Transaction> withdraw(@RequestParam(value = "customerId") String customerId,
+                                      @RequestParam(value = "purchaseId") String purchaseId,
+                                      @RequestParam(value = "amount") double amount,
+                                      @RequestHeader(value = IDEMPOTENCY_KEY, required = false) String idempotencyKey) {
+        return idempotent("withdraw", idempotencyKey, customerId + '|' + purchaseId + '|' + amount,
+                () -> bankService.withdraw(customerId, purchaseId, amount));
+    }
+
+    // -------------------Consultar saldo
+
+    @GetMapping("/operations/balance/{purchaseId}")
+    public Mono<ResponseEntity<Balance>> retrieveBalance(@PathVariable("purchaseId") String purchaseId) {
+        return bankService.findBalance(purchaseId)
+                .map(ResponseEntity::ok)
+                .defaultIfEmpty(ResponseEntity.notFound().build());
+    }
+
+    //    REPORTS ********
+    // -------------------Transaction totals of a day (default today)
+
+    @GetMapping("/reports/daily")
+    public Mono<Report> retrieveDailyReport(@RequestParam(value = "date", required = false)
+                                            @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate date,
+                                            @RequestParam(value = "groupBy", required = false) String groupBy) {
+        return bankService.findDailyReport(date, groupBy);
+    }
+
+    // -------------------Transaction totals of a month (default this month)
+
+    @GetMapping("/reports/monthly")
+    public Mono<Report> retrieveMonthlyReport(@RequestParam(value = "month", required = false) YearMonth month,
+                                              @RequestParam(value = "groupBy", required = false) String groupBy) {
+        return bankService.findMonthlyReport(month, groupBy);
+    }
+
+    // Without a key the operation simply runs; with one, retries join or replay the first execution
+    private <T> Mono<T> idempotent(String operation, String key, String fingerprint, Supplier<Mono<T>> call) {
+        if (key == null) {
+            return call.get();
+        }
+        if (key.isEmpty() || key.length() > MAX_IDEMPOTENCY_KEY_LENGTH) {
+            return Mono.error(new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                    IDEMPOTENCY_KEY + " must have between 1 and " + MAX_IDEMPOTENCY_KEY_LENGTH + " characters"));
+        }
+        return idempotencyCache.execute(operation, key, fingerprint, call);
     }
 
 }
@@ -0,0 +1,110 @@
+package com.nttdata.bank.downstream;
+
+import com.nttdata.bank.config.ResilienceProperties;
+import io.github.resilience4j.bulkhead.Bulkhead;
+import io.github.resilience4j.bulkhead.BulkheadConfig;
+import io.github.resilience4j.bulkhead.BulkheadFullException;
+import io.github.resilience4j.bulkhead.BulkheadRegistry;
+import io.github.resilience4j.circuitbreaker.CallNotPermittedException;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerConfig;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import io.github.resilience4j.reactor.bulkhead.operator.BulkheadOperator;
+import io.github.resilience4j.reactor.circuitbreaker.operator.CircuitBreakerOperator;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.reactive.function.client.ClientRequest;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.ExchangeFilterFunction;
+import org.springframework.web.reactive.function.client.ExchangeFunction;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import org.springframework.web.server.ResponseStatusException;
+import reactor.core.publisher.Mono;
+
+/**
+ * Isolates the downstream resources ({@code /products}, {@code /customers}, {@code /purchases},
+ * {@code /transactions}) from each other with one bulkhead and one circuit breaker per resource.
+ * <p>
+ * The resource is the first segment of the request path. The bulkhead caps the exchanges of a resource
+ * waiting for a response, so a slow backend can only hold its own share of the connection pool. 5xx
+ * responses, timeouts and connection errors count as failures; 4xx responses do not. Rejected calls fail
+ * immediately with 503.
+ */
+public class DownstreamGuardFilter implements ExchangeFilterFunction {
+
+    private final BulkheadRegistry bulkheads;
+    private final CircuitBreakerRegistry circuitBreakers;
+    private final ResilienceProperties properties;
+
+    public DownstreamGuardFilter(ResilienceProperties properties) {
+        this.properties = properties;
+        ResilienceProperties.Bulkhead bulkhead = properties.getBulkhead();
+        this.bulkheads = BulkheadRegistry.of(BulkheadConfig.custom()
+                .maxConcurrentCalls(bulkhead.getMaxConcurrentCalls())
+                .maxWaitDuration(bulkhead.getMaxWaitDuration())
+                .build());
+
+        ResilienceProperties.CircuitBreaker circuitBreaker = properties.getCircuitBreaker();
+        this.circuitBreakers = CircuitBreakerRegistry.of(CircuitBreakerConfig.custom()
+                .failureRateThreshold(circuitBreaker.getFailureRateThreshold())
+                .slowCallRateThreshold(circuitBreaker.getSlowCallRateThreshold())
+                .slowCallDurationThreshold(circuitBreaker.getSlowCallDurationThreshold())
+                .slidingWindowSize(circuitBreaker.getSlidingWindowSize())
+                .minimumNumberOfCalls(circuitBreaker.getMinimumNumberOfCalls())
+                .waitDurationInOpenState(circuitBreaker.getWaitDurationInOpenState())
+                .permittedNumberOfCallsInHalfOpenState(circuitBreaker.getPermittedNumberOfCallsInHalfOpenState())
+                .recordException(DownstreamGuardFilter::isFailure)
+                .build());
+    }
+
+    @Override
+    public Mono<ClientResponse> filter(ClientRequest request, ExchangeFunction next) {
+        String resource = resourceOf(request.url().getPath());
+        return Mono.defer(() -> next.exchange(request))
+                .flatMap(response -> response.statusCode().is5xxServerError() ?
+                        response.createException().flatMap(Mono::error) :
+                        Mono.just(response))
+                .transformDeferred(CircuitBreakerOperator.of(circuitBreaker(resource)))
+                .transformDeferred(BulkheadOperator.of(bulkhead(resource)))
+                .onErrorMap(e -> e instanceof CallNotPermittedException || e instanceof BulkheadFullException,
+                        e -> new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE,
+                                "Downstream resource '" + resource + "' is unavailable: " + e.getMessage(), e));
+    }
+
+    public CircuitBreaker circuitBreaker(String resource) {
+        return circuitBreakers.circuitBreaker(resource);
+    }
+
+    public Bulkhead bulkhead(String resource) {
+        Integer maxConcurrentCalls = properties.getBulkhead().getResources().get(resource);
+        if (maxConcurrentCalls == null) {
+            return bulkheads.bulkhead(resource);
+        }
+        return bulkheads.bulkhead(resource, () -> BulkheadConfig.from(bulkheads.getDefaultConfig())
+                .maxConcurrentCalls(maxConcurrentCalls)
+                .build());
+    }
+
+    public BulkheadRegistry getBulkheadRegistry() {
+        return bulkheads;
+    }
+
+    public CircuitBreakerRegistry getCircuitBreakerRegistry() {
+        return circuitBreakers;
+    }
+
+    public static String resourceOf(String path) {
+        int start = path.startsWith("/") ? 1 : 0;
+        int end = path.indexOf('/', start);
+        return end < 0 ? path.substring(start) : path.substring(start, end);
+    }
+
+    // True when the call was refused by an open circuit or a full bulkhead, without reaching downstream
+    public static boolean isShed(Throwable e) {
+        Throwable cause = e instanceof ResponseStatusException ? e.getCause() : null;
+        return cause instanceof CallNotPermittedException || cause instanceof BulkheadFullException;
+    }
+
+    private static boolean isFailure(Throwable e) {
+        return !(e instanceof WebClientResponseException) || ((WebClientResponseException) e).getStatusCode().is5xxServerError();
+    }
+}
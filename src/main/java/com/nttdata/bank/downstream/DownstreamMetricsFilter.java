@@ -0,0 +1,73 @@
+package com.nttdata.bank.downstream;
+
+import com.nttdata.bank.metrics.OperationMetricsAspect;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.reactive.function.client.ClientRequest;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.ExchangeFilterFunction;
+import org.springframework.web.reactive.function.client.ExchangeFunction;
+import org.springframework.web.server.ResponseStatusException;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+
+/**
+ * Times every downstream exchange up to the response headers as {@code bank.downstream.requests}, tagged
+ * by resource, method, outcome and the {@code BankService} operation that issued it. Calls rejected by
+ * {@link DownstreamGuardFilter} are recorded with outcome {@code REJECTED}.
+ */
+public class DownstreamMetricsFilter implements ExchangeFilterFunction {
+
+    private final MeterRegistry meterRegistry;
+
+    public DownstreamMetricsFilter(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    @Override
+    public Mono<ClientResponse> filter(ClientRequest request, ExchangeFunction next) {
+        return Mono.deferContextual(ctx -> {
+            String operation = ctx.getOrDefault(OperationMetricsAspect.OPERATION_KEY, "none");
+            long start = System.nanoTime();
+            return next.exchange(request)
+                    .doOnSuccess(response -> record(request, operation, outcome(response), start))
+                    .doOnError(e -> record(request, operation, outcome(e), start))
+                    .doOnCancel(() -> record(request, operation, "CANCELLED", start));
+        });
+    }
+
+    private void record(ClientRequest request, String operation, String outcome, long start) {
+        Timer.builder("bank.downstream.requests")
+                .description("Latency of downstream HTTP calls")
+                .tag("resource", DownstreamGuardFilter.resourceOf(request.url().getPath()))
+                .tag("method", request.method().name())
+                .tag("operation", operation)
+                .tag("outcome", outcome)
+                .publishPercentileHistogram()
+                .minimumExpectedValue(Duration.ofMillis(1))
+                .maximumExpectedValue(Duration.ofSeconds(30))
+                .register(meterRegistry)
+                .record(Duration.ofNanos(System.nanoTime() - start));
+    }
+
+    private static String outcome(ClientResponse response) {
+        if (response == null) {
+            return "UNKNOWN";
+        }
+        int status = response.rawStatusCode();
+        if (status >= 500) {
+            return "SERVER_ERROR";
+        }
+        return status >= 400 ? "CLIENT_ERROR" : "SUCCESS";
+    }
+
+    private static String outcome(Throwable error) {
+        if (error instanceof ResponseStatusException
+                && ((ResponseStatusException) error).getStatus() == HttpStatus.SERVICE_UNAVAILABLE) {
+            return "REJECTED";
+        }
+        return OperationMetricsAspect.outcome(error);
+    }
+}
@@ -0,0 +1,188 @@
+package com.nttdata.bank.downstream;
+
+import com.nttdata.bank.config.DownstreamProperties;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Hedged idempotent reads: when the first attempt on a hedged route has not answered after the route's
+ * latency percentile, a second attempt is sent and whichever signals first wins; the other is cancelled.
+ * <p>
+ * First-attempt latencies go to an HdrHistogram {@link Recorder} per route, and the delay is recomputed
+ * from the samples of the last window, so it follows the backend without a lock on the request path.
+ * Each first attempt adds {@code budgetRatio} to the route's budget and each second attempt spends one,
+ * so second attempts stay below that fraction of first attempts, plus a small banked reserve. Sent and
+ * over-budget second attempts are counted in {@code bank.downstream.hedges}; the current delay is the
+ * {@code bank.downstream.hedge.delay} gauge.
+ */
+public class HedgedReads {
+
+    private static final long MILLI_TOKENS = 1000;
+
+    private final boolean enabled;
+    private final Map<String, Route> routes = new ConcurrentHashMap<>();
+
+    public HedgedReads(DownstreamProperties.Hedging properties, MeterRegistry meterRegistry) {
+        this.enabled = properties.isEnabled();
+        if (enabled) {
+            properties.getRoutes().forEach((route, percentile) ->
+                    routes.put(route, new Route(route, percentile, properties, meterRegistry)));
+        }
+    }
+
+    public <T> Mono<T> mono(String route, Supplier<Mono<T>> call) {
+        Route hedged = enabled ? routes.get(route) : null;
+        if (hedged == null) {
+            return Mono.defer(call);
+        }
+        return Mono.defer(() -> {
+            long delayNanos = hedged.delayNanos();
+            Mono<T> first = hedged.timed(Mono.defer(call));
+            if (delayNanos < 0) {
+                return first;
+            }
+            return Mono.firstWithSignal(first, Mono.defer(() -> hedged.trySpend() ? call.get() : Mono.<T>never())
+                    .delaySubscription(Duration.ofNanos(delayNanos)));
+        });
+    }
+
+    // A stream is only hedged until its first element arrives; after that the first attempt to answer is kept
+    public <T> Flux<T> flux(String route, Supplier<Flux<T>> call) {
+        Route hedged = enabled ? routes.get(route) : null;
+        if (hedged == null) {
+            return Flux.defer(call);
+        }
+        return Flux.defer(() -> {
+            long delayNanos = hedged.delayNanos();
+            Flux<T> first = hedged.timed(Flux.defer(call));
+            if (delayNanos < 0) {
+                return first;
+            }
+            return Flux.firstWithSignal(first, Flux.defer(() -> hedged.trySpend() ? call.get() : Flux.<T>never())
+                    .delaySubscription(Duration.ofNanos(delayNanos)));
+        });
+    }
+
+    private static final class Route {
+
+        private final double percentile;
+        private final long minDelayMicros;
+        private final long maxDelayMicros;
+        private final long windowNanos;
+        private final long minSamples;
+        private final long deposit;
+        private final long maxBalance;
+
+        private final Recorder recorder = new Recorder(2);
+        private final AtomicLong nextUpdate;
+        private final AtomicLong balance = new AtomicLong();
+        private volatile Histogram interval;
+        private volatile long delayNanos = -1;
+
+        private final Counter sent;
+        private final Counter overBudget;
+
+        private Route(String route, double percentile, DownstreamProperties.Hedging properties, MeterRegistry meterRegistry) {
+            this.percentile = Math.min(100, Math.max(0, percentile));
+            this.minDelayMicros = TimeUnit.NANOSECONDS.toMicros(properties.getMinDelay().toNanos());
+            this.maxDelayMicros = Math.max(minDelayMicros, TimeUnit.NANOSECONDS.toMicros(properties.getMaxDelay().toNanos()));
+            this.windowNanos = properties.getWindow().toNanos();
+            this.minSamples = Math.max(1, properties.getMinSamples());
+            this.deposit = (long) (Math.min(1, Math.max(0, properties.getBudgetRatio())) * MILLI_TOKENS);
+            this.maxBalance = Math.max(1, properties.getBudgetReserve()) * MILLI_TOKENS;
+            this.nextUpdate = new AtomicLong(System.nanoTime() + windowNanos);
+
+            this.sent = Counter.builder("bank.downstream.hedges")
+                    .tag("route", route)
+                    .tag("result", "sent")
+                    .register(meterRegistry);
+            this.overBudget = Counter.builder("bank.downstream.hedges")
+                    .tag("route", route)
+                    .tag("result", "over_budget")
+                    .register(meterRegistry);
+            Gauge.builder("bank.downstream.hedge.delay", this, r -> r.delayNanos < 0 ? Double.NaN : r.delayNanos / 1e6)
+                    .tag("route", route)
+                    .baseUnit("milliseconds")
+                    .register(meterRegistry);
+        }
+
+        // Delay before the second attempt, or -1 while the route has too few samples to hedge
+        long delayNanos() {
+            long now = System.nanoTime();
+            long next = nextUpdate.get();
+            if (now - next >= 0 && nextUpdate.compareAndSet(next, now + windowNanos)) {
+                interval = recorder.getIntervalHistogram(interval);
+                if (interval.getTotalCount() >= minSamples) {
+                    long micros = interval.getValueAtPercentile(percentile);
+                    delayNanos = TimeUnit.MICROSECONDS.toNanos(Math.min(maxDelayMicros, Math.max(minDelayMicros, micros)));
+                }
+            }
+            accrue();
+            return delayNanos;
+        }
+
+        boolean trySpend() {
+            while (true) {
+                long current = balance.get();
+                if (current < MILLI_TOKENS) {
+                    overBudget.increment();
+                    return false;
+                }
+                if (balance.compareAndSet(current, current - MILLI_TOKENS)) {
+                    sent.increment();
+                    return true;
+                }
+            }
+        }
+
+        <T> Mono<T> timed(Mono<T> attempt) {
+            return Mono.defer(() -> {
+                Sample sample = new Sample();
+                return attempt.doOnEach(signal -> sample.record()).doOnCancel(sample::record);
+            });
+        }
+
+        <T> Flux<T> timed(Flux<T> attempt) {
+            return Flux.defer(() -> {
+                Sample sample = new Sample();
+                return attempt.doOnEach(signal -> sample.record()).doOnCancel(sample::record);
+            });
+        }
+
+        private void accrue() {
+            while (true) {
+                long current = balance.get();
+                long updated = Math.min(maxBalance, current + deposit);
+                if (updated == current || balance.compareAndSet(current, updated)) {
+                    return;
+                }
+            }
+        }
+
+        // Time to the first signal of an attempt; a cancelled attempt counts as answering when cancelled
+        private final class Sample {
+
+            private final long start = System.nanoTime();
+            private final AtomicBoolean recorded = new AtomicBoolean();
+
+            void record() {
+                if (recorded.compareAndSet(false, true)) {
+                    recorder.recordValue(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start));
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package com.nttdata.bank.downstream;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+/**
+ * Single-flight coalescing of identical downstream reads.
+ * <p>
+ * While a call for a key is in flight, further subscribers for the same key join it instead of issuing
+ * their own request and all of them receive the same signals. The key is forgotten as soon as the call
+ * terminates, so nothing is served after completion; that is what separates this from a cache.
+ * Joined calls are counted in {@code bank.downstream.coalesced}, tagged by resource.
+ */
+public class RequestCoalescer {
+
+    private final ConcurrentMap<String, Mono<?>> inFlightMonos = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Flux<?>> inFlightFluxes = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Counter> collapsed = new ConcurrentHashMap<>();
+    private final MeterRegistry meterRegistry;
+
+    public RequestCoalescer(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    @SuppressWarnings("unchecked")
+    public <T> Mono<T> mono(String resource, String key, Supplier<Mono<T>> call) {
+        return Mono.defer(() -> {
+            AtomicReference<Mono<T>> created = new AtomicReference<>();
+            Mono<?> shared = inFlightMonos.computeIfAbsent(key, k -> {
+                Mono<T> mono = call.get()
+                        .doFinally(signal -> inFlightMonos.remove(k, created.get()))
+                        .cache();
+                created.set(mono);
+                return mono;
+            });
+            if (shared != created.get()) {
+                counter(resource).increment();
+            }
+            return (Mono<T>) shared;
+        });
+    }
+
+    @SuppressWarnings("unchecked")
+    public <T> Flux<T> flux(String resource, String key, Supplier<Flux<T>> call) {
+        return Flux.defer(() -> {
+            AtomicReference<Flux<T>> created = new AtomicReference<>();
+            Flux<?> shared = inFlightFluxes.computeIfAbsent(key, k -> {
+                Flux<T> flux = call.get()
+                        .doFinally(signal -> inFlightFluxes.remove(k, created.get()))
+                        .cache();
+                created.set(flux);
+                return flux;
+            });
+            if (shared != created.get()) {
+                counter(resource).increment();
+            }
+            return (Flux<T>) shared;
+        });
+    }
+
+    private Counter counter(String resource) {
+        return collapsed.computeIfAbsent(resource, r -> Counter.builder("bank.downstream.coalesced")
+                .description("Downstream reads that joined an identical in-flight request")
+                .tag("resource", r)
+                .register(meterRegistry));
+    }
+}
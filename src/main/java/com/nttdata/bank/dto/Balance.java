@@ -0,0 +1,15 @@
+package com.nttdata.bank.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class Balance {
+
+    private String purchaseId;
+
+    private double balance;
+}
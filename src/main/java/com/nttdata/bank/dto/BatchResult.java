@@ -0,0 +1,33 @@
+package com.nttdata.bank.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class BatchResult<T> {
+
+    public static final String OK = "OK";
+    public static final String ERROR = "ERROR";
+
+    // Zero-based position of the record in the request stream
+    private long index;
+
+    private String status;
+
+    private T item;
+
+    private String error;
+
+    public static <T> BatchResult<T> ok(long index, T item) {
+        return new BatchResult<>(index, OK, item, null);
+    }
+
+    public static <T> BatchResult<T> error(long index, String error) {
+        return new BatchResult<>(index, ERROR, null, error);
+    }
+}
@@ -0,0 +1,20 @@
+package com.nttdata.bank.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class Page<T> {
+
+    private List<T> items;
+
+    // Opaque token to pass as "cursor" to fetch the next page; absent on the last page
+    private String nextCursor;
+}
@@ -0,0 +1,29 @@
+package com.nttdata.bank.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.nttdata.bank.client.Customer;
+import com.nttdata.bank.client.Purchase;
+import com.nttdata.bank.client.Transaction;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+import java.util.Map;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class Portfolio {
+
+    private Customer customer;
+
+    private List<Purchase> purchases;
+
+    // Most recent transactions of each purchase by purchase id, newest first
+    private Map<String, List<Transaction>> recentTransactions;
+
+    // Sections left out because they failed or did not answer in time; absent when the portfolio is complete
+    private List<String> unavailable;
+}
@@ -0,0 +1,40 @@
+package com.nttdata.bank.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class Report {
+
+    // DAILY or MONTHLY
+    private String granularity;
+
+    // ISO date (2022-07-31) or month (2022-07)
+    private String period;
+
+    private List<Row> rows;
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public static class Row {
+
+        // Absent when the report is not grouped by this dimension
+        private String productCategory;
+
+        private String customerType;
+
+        private String transactionType;
+
+        private long count;
+
+        private double amount;
+    }
+}
@@ -0,0 +1,202 @@
+package com.nttdata.bank.limit;
+
+import com.nttdata.bank.client.Purchase;
+import com.nttdata.bank.client.Transaction;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.YearMonth;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Enforces {@link Purchase#getTransactionLimitPerMonthNumber()} for purchases with
+ * {@code HasTransactionLimitPerMonth} without a read-modify-write against the downstream service.
+ * <p>
+ * Each limited purchase has one {@link AtomicLong} packing the month it counts for (high 32 bits) and the
+ * number of operations in that month (low 32 bits), so taking a slot and rolling over to a new month are a
+ * single compare-and-set. After that this instance is the source of truth and the count it hands out is
+ * written back with the purchase.
+ * <p>
+ * A counter starts from the operations of its month found by the startup scan of the transaction log (see
+ * {@link #seed()}). The stored {@code transactionsMadeByCustomerInCurrentMonth} does not say which
+ * month it was counted in, so it is only a provisional start for counters created before the scan is in;
+ * those are corrected on their next use once it is.
+ */
+public class MonthlyTransactionLimiter {
+
+    public static final int REJECTED = -1;
+    public static final int UNLIMITED = 0;
+
+    private static final Set<String> COUNTED_TYPES = Set.of("DEPOSIT", "WITHDRAWAL");
+
+    private final ConcurrentMap<String, Counter> counters = new ConcurrentHashMap<>();
+    private final Clock clock;
+    private final Instant created;
+    private volatile Seed seed;
+
+    public MonthlyTransactionLimiter(Clock clock) {
+        this.clock = clock;
+        this.created = clock.instant();
+    }
+
+    /**
+     * Takes one operation slot for the purchase in the current month.
+     *
+     * @return the purchase's operation count this month including this one, {@link #REJECTED} when the
+     * limit is already reached, or {@link #UNLIMITED} when the purchase has no monthly limit
+     */
+    public int tryAcquire(Purchase purchase) {
+        if (!Boolean.TRUE.equals(purchase.getHasTransactionLimitPerMonth())
+                || purchase.getTransactionLimitPerMonthNumber() == null) {
+            return UNLIMITED;
+        }
+        int limit = purchase.getTransactionLimitPerMonthNumber();
+        int month = currentMonth();
+        Counter counter = counters.computeIfAbsent(purchase.getId(), id -> newCounter(id, month,
+                purchase.getTransactionsMadeByCustomerInCurrentMonth()));
+        counter.settle(seed);
+        while (true) {
+            long state = counter.state.get();
+            int count = monthOf(state) == month ? countOf(state) : 0;
+            if (count >= limit) {
+                return REJECTED;
+            }
+            if (counter.state.compareAndSet(state, pack(month, count + 1))) {
+                return count + 1;
+            }
+        }
+    }
+
+    // Gives back a slot taken by tryAcquire whose operation failed; a no-op once the month has rolled over
+    public void release(String purchaseId, int acquired) {
+        Counter counter = acquired > 0 ? counters.get(purchaseId) : null;
+        if (counter == null) {
+            return;
+        }
+        int month = currentMonth();
+        while (true) {
+            long state = counter.state.get();
+            if (monthOf(state) != month || countOf(state) == 0) {
+                return;
+            }
+            if (counter.state.compareAndSet(state, pack(month, countOf(state) - 1))) {
+                return;
+            }
+        }
+    }
+
+    public void forget(String purchaseId) {
+        counters.remove(purchaseId);
+    }
+
+    /**
+     * Starts a seed from the transaction log: {@link Seed#add(Transaction) add} the stored transactions, then
+     * {@link Seed#apply() apply} it once. Only operations emitted before this limiter was created count, since
+     * later ones went through it.
+     */
+    public Seed seed() {
+        return new Seed();
+    }
+
+    private Counter newCounter(String purchaseId, int month, Integer stored) {
+        Seed current = seed;
+        if (current != null) {
+            return new Counter(purchaseId, pack(month, month == current.month ? current.counts.getOrDefault(purchaseId, 0) : 0));
+        }
+        Counter counter = new Counter(purchaseId, pack(month, stored != null ? Math.max(0, stored) : 0));
+        counter.base = countOf(counter.state.get());
+        counter.provisional = true;
+        return counter;
+    }
+
+    private int currentMonth() {
+        return monthIndex(YearMonth.now(clock));
+    }
+
+    private static int monthIndex(YearMonth month) {
+        return month.getYear() * 12 + month.getMonthValue() - 1;
+    }
+
+    private static long pack(int month, int count) {
+        return ((long) month << 32) | (count & 0xFFFFFFFFL);
+    }
+
+    private static int monthOf(long state) {
+        return (int) (state >>> 32);
+    }
+
+    private static int countOf(long state) {
+        return (int) state;
+    }
+
+    private static final class Counter {
+
+        private final String purchaseId;
+        private final AtomicLong state;
+        // Set while the count rests on the stored field rather than the scan; base is that stored value
+        private volatile boolean provisional;
+        private int base;
+
+        private Counter(String purchaseId, long state) {
+            this.purchaseId = purchaseId;
+            this.state = new AtomicLong(state);
+        }
+
+        // Replaces the stored start by the scanned one, keeping the operations taken since
+        void settle(Seed seed) {
+            if (!provisional || seed == null) {
+                return;
+            }
+            synchronized (this) {
+                if (!provisional) {
+                    return;
+                }
+                while (true) {
+                    long current = state.get();
+                    int month = monthOf(current);
+                    int taken = Math.max(0, countOf(current) - base);
+                    // Nothing scanned falls in a month after the one the limiter was created in
+                    int scanned = month == seed.month ? seed.counts.getOrDefault(purchaseId, 0) : 0;
+                    if (state.compareAndSet(current, pack(month, scanned + taken))) {
+                        break;
+                    }
+                }
+                provisional = false;
+            }
+        }
+    }
+
+    /**
+     * Operations per purchase emitted in the month the limiter was created, before it was.
+     */
+    public final class Seed {
+
+        private final int month = monthIndex(YearMonth.from(created.atZone(clock.getZone())));
+        private final Map<String, Integer> counts = new HashMap<>();
+
+        private Seed() {
+        }
+
+        public void add(Transaction transaction) {
+            if (transaction.getPurchaseId() == null || transaction.getEmittedAt() == null
+                    || !COUNTED_TYPES.contains(transaction.getTransactionType())) {
+                return;
+            }
+            Instant emittedAt = transaction.getEmittedAt().toInstant();
+            if (emittedAt.isBefore(created)
+                    && monthIndex(YearMonth.from(emittedAt.atZone(clock.getZone()))) == month) {
+                counts.merge(transaction.getPurchaseId(), 1, Integer::sum);
+            }
+        }
+
+        public void apply() {
+            seed = this;
+            counters.values().forEach(counter -> counter.settle(this));
+        }
+    }
+}
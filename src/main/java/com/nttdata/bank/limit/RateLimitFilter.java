@@ -0,0 +1,139 @@
+package com.nttdata.bank.limit;
+
+import com.nttdata.bank.config.RateLimitProperties;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.WebFilter;
+import org.springframework.web.server.WebFilterChain;
+import org.springframework.web.util.pattern.PathPattern;
+import org.springframework.web.util.pattern.PathPatternParser;
+import reactor.core.publisher.Mono;
+
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Per-client, per-route token bucket limits in front of the controllers. Clients are told apart by remote
+ * address, or by a header set by a trusted gateway when one is configured. A request over its route's limit
+ * is rejected with 429 and a {@code Retry-After} header before it reaches any downstream service.
+ * <p>
+ * Runs right after the access log filter, so rejections are logged too. The routes are compiled into
+ * {@link TokenBuckets} and recompiled when the bound properties change, so limits rebound from the config
+ * server take effect on the next request; changing a route's limit starts its buckets afresh.
+ */
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE + 1)
+public class RateLimitFilter implements WebFilter {
+
+    private static final String UNKNOWN_CLIENT = "-";
+    private static final long NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    private final RateLimitProperties properties;
+    private final AtomicReference<Rules> rules = new AtomicReference<>(new Rules(new LinkedHashMap<>(), List.of()));
+
+    public RateLimitFilter(RateLimitProperties properties) {
+        this.properties = properties;
+    }
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, WebFilterChain chain) {
+        if (!properties.isEnabled()) {
+            return chain.filter(exchange);
+        }
+        Rule rule = currentRules().match(exchange.getRequest());
+        if (rule == null) {
+            return chain.filter(exchange);
+        }
+        long waitNanos = rule.buckets.tryAcquire(clientOf(exchange.getRequest()), System.nanoTime());
+        if (waitNanos == 0) {
+            return chain.filter(exchange);
+        }
+        long retryAfterSeconds = (waitNanos + NANOS_PER_SECOND - 1) / NANOS_PER_SECOND;
+        exchange.getResponse().getHeaders().set(HttpHeaders.RETRY_AFTER, Long.toString(retryAfterSeconds));
+        return Mono.error(new ResponseStatusException(HttpStatus.TOO_MANY_REQUESTS,
+                "Rate limit exceeded for " + rule.pattern.getPatternString()));
+    }
+
+    private Rules currentRules() {
+        Rules current = rules.get();
+        Map<String, RateLimitProperties.Limit> configured = properties.getRoutes();
+        if (current.source.equals(configured)) {
+            return current;
+        }
+        Rules compiled = Rules.compile(configured, properties);
+        rules.compareAndSet(current, compiled);
+        return compiled;
+    }
+
+    private String clientOf(ServerHttpRequest request) {
+        String header = properties.getClientHeader();
+        if (header != null && !header.isEmpty()) {
+            String client = request.getHeaders().getFirst(header);
+            if (client != null && !client.isEmpty()) {
+                return client;
+            }
+        }
+        InetSocketAddress remoteAddress = request.getRemoteAddress();
+        return remoteAddress != null ? remoteAddress.getHostString() : UNKNOWN_CLIENT;
+    }
+
+    private static final class Rules {
+
+        private final Map<String, RateLimitProperties.Limit> source;
+        private final List<Rule> rules;
+
+        private Rules(Map<String, RateLimitProperties.Limit> source, List<Rule> rules) {
+            this.source = source;
+            this.rules = rules;
+        }
+
+        static Rules compile(Map<String, RateLimitProperties.Limit> routes, RateLimitProperties properties) {
+            Map<String, RateLimitProperties.Limit> source = new LinkedHashMap<>();
+            List<Rule> rules = new ArrayList<>();
+            routes.forEach((pattern, limit) -> {
+                RateLimitProperties.Limit copy = new RateLimitProperties.Limit();
+                copy.setCapacity(limit.getCapacity());
+                copy.setRefillPerSecond(limit.getRefillPerSecond());
+                source.put(pattern, copy);
+                if (copy.getCapacity() > 0 && copy.getRefillPerSecond() > 0) {
+                    rules.add(new Rule(PathPatternParser.defaultInstance.parse(pattern),
+                            new TokenBuckets(copy.getCapacity(), copy.getRefillPerSecond(),
+                                    properties.getMaxClients(), properties.getIdleTimeout())));
+                }
+            });
+            rules.sort((a, b) -> PathPattern.SPECIFICITY_COMPARATOR.compare(a.pattern, b.pattern));
+            return new Rules(source, rules);
+        }
+
+        Rule match(ServerHttpRequest request) {
+            for (Rule rule : rules) {
+                if (rule.pattern.matches(request.getPath().pathWithinApplication())) {
+                    return rule;
+                }
+            }
+            return null;
+        }
+    }
+
+    private static final class Rule {
+
+        private final PathPattern pattern;
+        private final TokenBuckets buckets;
+
+        private Rule(PathPattern pattern, TokenBuckets buckets) {
+            this.pattern = pattern;
+            this.buckets = buckets;
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package com.nttdata.bank.limit;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Token buckets of the same size and refill rate, one per key, each held in a single {@link AtomicLong}.
+ * <p>
+ * A bucket stores the instant at which it will be full again rather than a token count and a timestamp:
+ * a request is allowed while that instant is less than {@code capacity - 1} refill intervals ahead of now,
+ * and taking a token pushes it one interval further. Taking a token is therefore one compare-and-set, and
+ * refilling costs nothing. Buckets idle for longer than {@code idleTimeout} are dropped, which is the same
+ * as leaving them full.
+ */
+public class TokenBuckets {
+
+    private static final double NANOS_PER_SECOND = 1_000_000_000d;
+
+    private final long intervalNanos;
+    private final long toleranceNanos;
+    private final Cache<String, AtomicLong> buckets;
+
+    public TokenBuckets(int capacity, double refillPerSecond, long maxKeys, Duration idleTimeout) {
+        if (capacity < 1 || !(refillPerSecond > 0)) {
+            throw new IllegalArgumentException("Token bucket needs a capacity and a refill rate above zero");
+        }
+        this.intervalNanos = Math.max(1, (long) (NANOS_PER_SECOND / refillPerSecond));
+        this.toleranceNanos = (capacity - 1) * intervalNanos;
+        this.buckets = Caffeine.newBuilder()
+                .maximumSize(maxKeys)
+                .expireAfterAccess(idleTimeout)
+                .executor(Runnable::run)
+                .build();
+    }
+
+    /**
+     * Takes one token from the key's bucket.
+     *
+     * @param nowNanos the current {@link System#nanoTime()}
+     * @return zero when a token was taken, otherwise the nanoseconds until the bucket has one
+     */
+    public long tryAcquire(String key, long nowNanos) {
+        AtomicLong fullAt = buckets.get(key, k -> new AtomicLong(nowNanos));
+        while (true) {
+            long current = fullAt.get();
+            long base = current - nowNanos > 0 ? current : nowNanos;
+            long ahead = base - nowNanos;
+            if (ahead > toleranceNanos) {
+                return ahead - toleranceNanos;
+            }
+            if (fullAt.compareAndSet(current, base + intervalNanos)) {
+                return 0;
+            }
+        }
+    }
+
+    public long size() {
+        return buckets.estimatedSize();
+    }
+}
@@ -0,0 +1,96 @@
+package com.nttdata.bank.logging;
+
+import com.nttdata.bank.config.AccessLogProperties;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.HandlerMapping;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.WebFilter;
+import org.springframework.web.server.WebFilterChain;
+import org.springframework.web.util.pattern.PathPattern;
+import reactor.core.publisher.Mono;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One structured line per sampled request on the {@code bank.access} logger, which logback-spring.xml
+ * routes through an asynchronous appender.
+ * <p>
+ * Nothing is formatted while the request runs: the sampling decision is taken once the response is done,
+ * from the route that handled it, and only a sampled request builds its line. Server errors and requests
+ * slower than the configured threshold are always logged.
+ */
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE)
+public class AccessLogFilter implements WebFilter {
+
+    private static final Logger log = LoggerFactory.getLogger("bank.access");
+    private static final String UNMATCHED_ROUTE = "-";
+
+    private final AccessLogProperties properties;
+
+    public AccessLogFilter(AccessLogProperties properties) {
+        this.properties = properties;
+    }
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, WebFilterChain chain) {
+        if (!properties.isEnabled() || !log.isInfoEnabled()) {
+            return chain.filter(exchange);
+        }
+        long start = System.nanoTime();
+        return chain.filter(exchange)
+                .doOnSuccess(v -> complete(exchange, start, null, false))
+                .doOnError(e -> complete(exchange, start, e, false))
+                .doOnCancel(() -> complete(exchange, start, null, true));
+    }
+
+    private void complete(ServerWebExchange exchange, long start, Throwable error, boolean cancelled) {
+        long elapsedNanos = System.nanoTime() - start;
+        int status = statusOf(exchange, error);
+        String route = routeOf(exchange);
+        if (status < 500 && elapsedNanos < properties.getSlowThreshold().toNanos() && !sampled(route)) {
+            return;
+        }
+        String method = exchange.getRequest().getMethodValue();
+        String path = exchange.getRequest().getPath().value();
+        long durationMs = TimeUnit.NANOSECONDS.toMillis(elapsedNanos);
+        String requestId = exchange.getRequest().getId();
+        if (error != null) {
+            log.info("method={} route={} path={} status={} duration_ms={} request_id={} error={}",
+                    method, route, path, status, durationMs, requestId, error.getClass().getSimpleName());
+        } else if (cancelled) {
+            log.info("method={} route={} path={} status={} duration_ms={} request_id={} cancelled=true",
+                    method, route, path, status, durationMs, requestId);
+        } else {
+            log.info("method={} route={} path={} status={} duration_ms={} request_id={}",
+                    method, route, path, status, durationMs, requestId);
+        }
+    }
+
+    private boolean sampled(String route) {
+        double rate = properties.getRoutes().getOrDefault(route, properties.getSampleRate());
+        return rate >= 1.0 || (rate > 0 && ThreadLocalRandom.current().nextDouble() < rate);
+    }
+
+    private static int statusOf(ServerWebExchange exchange, Throwable error) {
+        if (error instanceof ResponseStatusException) {
+            return ((ResponseStatusException) error).getRawStatusCode();
+        }
+        if (error != null) {
+            return 500;
+        }
+        Integer status = exchange.getResponse().getRawStatusCode();
+        return status != null ? status : 200;
+    }
+
+    private static String routeOf(ServerWebExchange exchange) {
+        Object pattern = exchange.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+        return pattern instanceof PathPattern ? ((PathPattern) pattern).getPatternString() : UNMATCHED_ROUTE;
+    }
+}
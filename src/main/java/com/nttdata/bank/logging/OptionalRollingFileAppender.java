@@ -0,0 +1,23 @@
+package com.nttdata.bank.logging;
+
+import ch.qos.logback.core.rolling.RollingFileAppender;
+import ch.qos.logback.core.util.OptionHelper;
+
+/**
+ * Spring Boot's rolling file appender, started only when a log file is configured.
+ * <p>
+ * Boot sets {@code LOG_FILE} only when {@code logging.file.name} or {@code logging.file.path} is set, and its
+ * default configuration writes no file otherwise. Without it this appender stays stopped, so it never opens
+ * a file, and drops what it is given.
+ */
+public class OptionalRollingFileAppender<E> extends RollingFileAppender<E> {
+
+    private static final String LOG_FILE = "LOG_FILE";
+
+    @Override
+    public void start() {
+        if (OptionHelper.propertyLookup(LOG_FILE, getContext(), null) != null) {
+            super.start();
+        }
+    }
+}
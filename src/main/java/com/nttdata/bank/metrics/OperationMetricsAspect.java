@@ -0,0 +1,82 @@
+package com.nttdata.bank.metrics;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import org.springframework.web.server.ResponseStatusException;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+
+/**
+ * Times every {@code BankService} operation from subscription to termination as {@code bank.operations},
+ * tagged by operation and outcome, and exposes the operation name to downstream calls through the
+ * Reactor context under {@link #OPERATION_KEY}.
+ */
+@Aspect
+@Component
+public class OperationMetricsAspect {
+
+    public static final String OPERATION_KEY = "bank.operation";
+
+    private final MeterRegistry meterRegistry;
+
+    public OperationMetricsAspect(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    @Around("execution(* com.nttdata.bank.service.BankService.*(..))")
+    public Object time(ProceedingJoinPoint joinPoint) throws Throwable {
+        String operation = joinPoint.getSignature().getName();
+        Object result = joinPoint.proceed();
+        if (result instanceof Mono) {
+            return Mono.defer(() -> {
+                long start = System.nanoTime();
+                return ((Mono<?>) result)
+                        .doOnSuccess(value -> record(operation, "SUCCESS", start))
+                        .doOnError(e -> record(operation, outcome(e), start))
+                        .doOnCancel(() -> record(operation, "CANCELLED", start));
+            }).contextWrite(ctx -> ctx.hasKey(OPERATION_KEY) ? ctx : ctx.put(OPERATION_KEY, operation));
+        }
+        if (result instanceof Flux) {
+            return Flux.defer(() -> {
+                long start = System.nanoTime();
+                return ((Flux<?>) result)
+                        .doOnComplete(() -> record(operation, "SUCCESS", start))
+                        .doOnError(e -> record(operation, outcome(e), start))
+                        .doOnCancel(() -> record(operation, "CANCELLED", start));
+            }).contextWrite(ctx -> ctx.hasKey(OPERATION_KEY) ? ctx : ctx.put(OPERATION_KEY, operation));
+        }
+        return result;
+    }
+
+    private void record(String operation, String outcome, long start) {
+        Timer.builder("bank.operations")
+                .description("Latency of BankService operations")
+                .tag("operation", operation)
+                .tag("outcome", outcome)
+                .publishPercentileHistogram()
+                .minimumExpectedValue(Duration.ofMillis(1))
+                .maximumExpectedValue(Duration.ofSeconds(30))
+                .register(meterRegistry)
+                .record(Duration.ofNanos(System.nanoTime() - start));
+    }
+
+    public static String outcome(Throwable error) {
+        int status = 0;
+        if (error instanceof ResponseStatusException) {
+            status = ((ResponseStatusException) error).getRawStatusCode();
+        } else if (error instanceof WebClientResponseException) {
+            status = ((WebClientResponseException) error).getRawStatusCode();
+        }
+        if (status >= 400 && status < 500) {
+            return "CLIENT_ERROR";
+        }
+        return status >= 500 ? "SERVER_ERROR" : "ERROR";
+    }
+}
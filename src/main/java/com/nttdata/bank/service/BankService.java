@@ -4,13 +4,22 @@ import com.nttdata.bank.client.Customer;
 import com.nttdata.bank.client.Product;
 import com.nttdata.bank.client.Purchase;
 import com.nttdata.bank.client.Transaction;
+import com.nttdata.bank.dto.Balance;
+import com.nttdata.bank.dto.BatchResult;
+import com.nttdata.bank.dto.Page;
+import com.nttdata.bank.dto.Portfolio;
+import com.nttdata.bank.dto.Report;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import java.time.LocalDate;
+import java.time.YearMonth;
+
 public interface BankService {
 
     //    PRODUCTS
     Flux<Product> findAllProducts();
+    Mono<Page<Product>> findProductsPage(int limit, String cursor);
     Mono<Product> findProductByCategory(String productCategory);
     Mono<Product> saveProduct(Product product);
     Mono<Product> updateProduct(Product product);
@@ -18,6 +27,7 @@ public interface BankService {
 
     //    CUSTOMERS
     Flux<Customer> findAllCustomers();
+    Mono<Page<Customer>> findCustomersPage(int limit, String cursor);
     Flux<Customer> findAllCustomersByCustomerType(String type);
     Mono<Customer> findCustomerByDocNumber(String docNumber);
     Mono<Customer> saveCustomer(Customer customer);
@@ -26,6 +36,7 @@ public interface BankService {
 
     //    PURCHASES
     Flux<Purchase> findAllPurchases();
+    Mono<Page<Purchase>> findPurchasesPage(int limit, String cursor);
     Mono<Purchase> findPurchaseById(String id);
     Mono<Purchase> savePurchase(Purchase purchase);
     Mono<Purchase> updatePurchase(Purchase purchase);
@@ -33,15 +44,24 @@ public interface BankService {
 
     //    TRANSACTIONS
     Flux<Transaction> findAllTransactions();
+    Mono<Page<Transaction>> findTransactionsPage(int limit, String cursor);
     Mono<Transaction> findTransactionById(String id);
     Mono<Transaction> saveTransaction(Transaction transaction);
+    Flux<BatchResult<Transaction>> saveTransactions(Flux<String> lines);
     Mono<Transaction> updateTransaction(Transaction transaction);
     Mono<Transaction> deleteTransaction(String id);
 
     //    OPERATIONS
-    Flux<Purchase> grantProductToCustomer(String customerDocNumber, String productCategory);
+    Mono<Purchase> grantProductToCustomer(String customerDocNumber, String productCategory);
+    Flux<BatchResult<Purchase>> grantProducts(Flux<String> lines);
     Flux<Purchase> displayCustomerPurchases(String customerId);
-    Flux<Transaction> deposit(String customerId, String purchaseId, double amount);
-    Flux<Transaction> withdraw(String customerId, String purchaseId, double amount);
+    Mono<Transaction> deposit(String customerId, String purchaseId, double amount);
+    Mono<Transaction> withdraw(String customerId, String purchaseId, double amount);
+    Mono<Balance> findBalance(String purchaseId);
+    Mono<Portfolio> findCustomerPortfolio(String customerDocNumber, Integer recentTransactions);
+
+    //    REPORTS
+    Mono<Report> findDailyReport(LocalDate day, String groupBy);
+    Mono<Report> findMonthlyReport(YearMonth month, String groupBy);
 
 }
@@ -1,48 +1,259 @@
 package com.nttdata.bank.service.impl;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.nttdata.bank.analytics.TransactionAnalytics;
+import com.nttdata.bank.cache.BalanceView;
+import com.nttdata.bank.cache.CustomerCache;
+import com.nttdata.bank.cache.CustomerTypeIndex;
+import com.nttdata.bank.cache.ProductCatalogCache;
+import com.nttdata.bank.cache.RecentTransactions;
 import com.nttdata.bank.client.Customer;
 import com.nttdata.bank.client.Product;
 import com.nttdata.bank.client.Purchase;
 import com.nttdata.bank.client.Transaction;
+import com.nttdata.bank.client.enums.CustomerType;
+import com.nttdata.bank.client.enums.ProductCategory;
+import com.nttdata.bank.client.enums.ProductType;
+import com.nttdata.bank.config.BatchProperties;
+import com.nttdata.bank.config.CacheProperties;
+import com.nttdata.bank.config.DownstreamProperties;
+import com.nttdata.bank.config.PortfolioProperties;
+import com.nttdata.bank.config.ReportProperties;
+import com.nttdata.bank.concurrent.KeyedSerializer;
+import com.nttdata.bank.downstream.DownstreamGuardFilter;
+import com.nttdata.bank.downstream.HedgedReads;
+import com.nttdata.bank.downstream.RequestCoalescer;
+import com.nttdata.bank.dto.Balance;
+import com.nttdata.bank.dto.BatchResult;
+import com.nttdata.bank.dto.GrantRequest;
+import com.nttdata.bank.dto.Page;
+import com.nttdata.bank.dto.Portfolio;
+import com.nttdata.bank.dto.Report;
+import com.nttdata.bank.limit.MonthlyTransactionLimiter;
 import com.nttdata.bank.service.BankService;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.BeanUtils;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.stereotype.Service;
 import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import org.springframework.web.server.ResponseStatusException;
+import reactor.core.Disposable;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
-
-import java.util.concurrent.atomic.AtomicReference;
+import reactor.util.function.Tuple2;
+import reactor.util.retry.Retry;
+
+import javax.annotation.PreDestroy;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Clock;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.OptionalLong;
+import java.util.PriorityQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BiFunction;
+import java.util.function.Function;
 
 @Slf4j
 @Service
 public class BankServiceImpl implements BankService {
 
     private final WebClient webClient;
+    private final ProductCatalogCache productCatalog;
+    private final CustomerCache customerCache;
+    private final CustomerTypeIndex customerTypeIndex = new CustomerTypeIndex();
+    private final Duration customerTypeIndexRefresh;
+    private Disposable customerTypeIndexRefresher;
+    private Disposable warmUp;
+    private Disposable recentTransactionsRefresher;
+    private final BalanceView balanceView = new BalanceView();
+    private final Duration balanceViewRefresh;
+    private Disposable balanceViewRefresher;
+    private final TransactionAnalytics transactionAnalytics;
+    private final RecentTransactions recentTransactions;
+    private final MonthlyTransactionLimiter transactionLimiter = new MonthlyTransactionLimiter(Clock.systemDefaultZone());
+    private final BatchProperties batchProperties;
+    private final PortfolioProperties portfolioProperties;
+    private final ObjectMapper objectMapper;
+    private final RequestCoalescer coalescer;
+    private final HedgedReads hedgedReads;
+    private final KeyedSerializer purchaseOperations;
+    private final KeyedSerializer customerGrants;
     private static final String PRODUCTS_URI = "/products";
     private static final String CUSTOMERS_URI = "/customers";
     private static final String PURCHASES_URI = "/purchases";
     private static final String TRANSACTIONS_URI = "/transactions";
+    private static final int MAX_PAGE_SIZE = 1000;
+    private static final Duration WARM_UP_FIRST_BACKOFF = Duration.ofSeconds(1);
+    private static final Duration WARM_UP_MAX_BACKOFF = Duration.ofMinutes(1);
+
+    public BankServiceImpl(WebClient downstreamWebClient, CacheProperties cacheProperties,
+                           BatchProperties batchProperties, PortfolioProperties portfolioProperties,
+                           ReportProperties reportProperties, DownstreamProperties downstreamProperties,
+                           ObjectMapper objectMapper, MeterRegistry meterRegistry) {
+        this.webClient = downstreamWebClient;
+        this.batchProperties = batchProperties;
+        this.portfolioProperties = portfolioProperties;
+        this.objectMapper = objectMapper;
+        this.coalescer = new RequestCoalescer(meterRegistry);
+        this.hedgedReads = new HedgedReads(downstreamProperties.getHedging(), meterRegistry);
+        this.transactionAnalytics = new TransactionAnalytics(Clock.systemDefaultZone(),
+                reportProperties.getRetainedDays(), reportProperties.getRetainedMonths());
+        this.recentTransactions = new RecentTransactions(portfolioProperties.getMaxRecentTransactions());
+        this.purchaseOperations = new KeyedSerializer("bank.operations.serialized", meterRegistry);
+        this.customerGrants = new KeyedSerializer("bank.grants.serialized", meterRegistry);
+        this.productCatalog = new ProductCatalogCache(this::fetchAllProducts,
+                cacheProperties.getProducts().getTtl(),
+                cacheProperties.getProducts().getRefreshAhead());
+        this.customerCache = new CustomerCache(cacheProperties.getCustomers().getMaxSize(),
+                cacheProperties.getCustomers().getTtl());
+        this.customerTypeIndexRefresh = cacheProperties.getCustomers().getTypeIndexRefresh();
+        this.balanceViewRefresh = cacheProperties.getBalances().getRefresh();
+
+        FunctionCounter.builder("bank.cache.customers.gets", customerCache, CustomerCache::hitCount)
+                .tag("result", "hit")
+                .register(meterRegistry);
+        FunctionCounter.builder("bank.cache.customers.gets", customerCache, CustomerCache::missCount)
+                .tag("result", "miss")
+                .register(meterRegistry);
+        FunctionCounter.builder("bank.cache.customers.evictions", customerCache, CustomerCache::evictionCount)
+                .register(meterRegistry);
+        Gauge.builder("bank.cache.customers.size", customerCache, CustomerCache::size)
+                .register(meterRegistry);
+        Gauge.builder("bank.balances.size", balanceView, BalanceView::size)
+                .register(meterRegistry);
+        Gauge.builder("bank.customers.type-index.size", customerTypeIndex, CustomerTypeIndex::size)
+                .register(meterRegistry);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void warmUpCaches() {
+        productCatalog.refresh()
+                .subscribe(r -> { }, e -> log.warn("Initial load of product catalog failed: {}", e.toString()));
+        // Transactions saved from now on are recorded as they pass; older ones within retention are loaded
+        // once the purchases (and so their categories and customer types) are known
+        Date analyticsStart = new Date();
+        // A back-dated transaction saved while the log is read is both recorded and read; it counts once,
+        // also when a failed attempt had already recorded it
+        transactionAnalytics.beginLoad();
+        // Retried until it succeeds: until then portfolios scan the whole log, monthly limits rest on the
+        // stored counts and reports miss the transactions saved before this instance started
+        warmUp = Mono.defer(() -> {
+                    // The same scan seeds the monthly limiter with the operations made before this instance started
+                    MonthlyTransactionLimiter.Seed limiterSeed = transactionLimiter.seed();
+                    return balanceView.rebuild(findAllPurchases().doOnNext(transactionAnalytics::registerPurchase))
+                            .doOnNext(count -> log.info("Balance view rebuilt with {} purchases", count))
+                            .then(recentTransactions.load(findAllTransactions()
+                                    .doOnNext(limiterSeed::add)
+                                    .doOnNext(transaction -> {
+                                        if (transaction.getEmittedAt() != null && transaction.getEmittedAt().before(analyticsStart)) {
+                                            transactionAnalytics.record(transaction);
+                                        }
+                                    })))
+                            .doOnNext(count -> limiterSeed.apply());
+                })
+                .retryWhen(Retry.backoff(Long.MAX_VALUE, WARM_UP_FIRST_BACKOFF)
+                        .maxBackoff(WARM_UP_MAX_BACKOFF)
+                        .doBeforeRetry(signal -> log.warn("Rebuild of balance view or transaction analytics failed, retrying: {}",
+                                signal.failure().toString())))
+                .doFinally(signal -> transactionAnalytics.endLoad())
+                .subscribe(count -> log.info("Transaction analytics and recent transactions loaded from {} transactions", count),
+                        e -> log.warn("Rebuild of balance view or transaction analytics failed: {}", e.toString()));
+        if (customerTypeIndexRefresh.compareTo(Duration.ZERO) > 0) {
+            // A refresh still running when the next one is due skips that tick
+            customerTypeIndexRefresher = Flux.interval(Duration.ZERO, customerTypeIndexRefresh)
+                    .onBackpressureDrop()
+                    .concatMap(tick -> customerTypeIndex.refresh(findAllCustomers())
+                            .onErrorResume(e -> {
+                                log.warn("Refresh of customer type index failed: {}", e.toString());
+                                return Mono.empty();
+                            }))
+                    .subscribe();
+        }
+        if (balanceViewRefresh.compareTo(Duration.ZERO) > 0) {
+            // Reconciles the view with balances written elsewhere; a tick that finds the startup rebuild still
+            // running is skipped
+            balanceViewRefresher = Flux.interval(balanceViewRefresh, balanceViewRefresh)
+                    .onBackpressureDrop()
+                    .concatMap(tick -> balanceView.rebuild(findAllPurchases().doOnNext(transactionAnalytics::registerPurchase))
+                            .onErrorResume(e -> {
+                                log.warn("Refresh of balance view failed: {}", e.toString());
+                                return Mono.empty();
+                            }))
+                    .subscribe();
+        }
+        Duration recentTransactionsRefresh = portfolioProperties.getRecentTransactionsRefresh();
+        if (recentTransactionsRefresh.compareTo(Duration.ZERO) > 0) {
+            // Picks up transactions written elsewhere; ticks before the startup load has succeeded are skipped,
+            // since that load also seeds the monthly limiter and the reports
+            recentTransactionsRefresher = Flux.interval(recentTransactionsRefresh, recentTransactionsRefresh)
+                    .onBackpressureDrop()
+                    .filter(tick -> recentTransactions.isLoaded())
+                    .concatMap(tick -> recentTransactions.load(findAllTransactions())
+                            .onErrorResume(e -> {
+                                log.warn("Refresh of recent transactions failed: {}", e.toString());
+                                return Mono.empty();
+                            }))
+                    .subscribe();
+        }
+    }
 
-    public BankServiceImpl(WebClient.Builder webClientBuilder) {
-        this.webClient = webClientBuilder.baseUrl("http://localhost:9000").build();
+    @PreDestroy
+    public void stopRefreshing() {
+        if (warmUp != null) {
+            warmUp.dispose();
+        }
+        if (customerTypeIndexRefresher != null) {
+            customerTypeIndexRefresher.dispose();
+        }
+        if (balanceViewRefresher != null) {
+            balanceViewRefresher.dispose();
+        }
+        if (recentTransactionsRefresher != null) {
+            recentTransactionsRefresher.dispose();
+        }
     }
 
     //    PRODUCTS
 
     @Override
     public Flux<Product> findAllProducts() {
-        return webClient.get()
-                .uri(PRODUCTS_URI)
-                .retrieve()
-                .bodyToFlux(Product.class);
+        return productCatalog.all();
+    }
+
+    @Override
+    public Mono<Page<Product>> findProductsPage(int limit, String cursor) {
+        return page(findAllProducts(), Product::getId, limit, cursor);
     }
 
     @Override
     public Mono<Product> findProductByCategory(String productCategory) {
-        return webClient.get()
-                .uri(PRODUCTS_URI + "/" + productCategory)
-                .retrieve()
-                .bodyToMono(Product.class);
+        ProductCategory category = toProductCategory(productCategory);
+        if (category == null) {
+            return fetchProductByCategory(productCategory);
+        }
+        return productCatalog.get(category)
+                .switchIfEmpty(Mono.defer(() -> fetchProductByCategory(category.name())));
     }
 
     @Override
@@ -51,7 +262,8 @@ public class BankServiceImpl implements BankService {
                 .uri(PRODUCTS_URI)
                 .body(Mono.just(product), Product.class)
                 .retrieve()
-                .bodyToMono(Product.class);
+                .bodyToMono(Product.class)
+                .doFinally(signal -> productCatalog.invalidate());
     }
 
     @Override
@@ -63,15 +275,38 @@ public class BankServiceImpl implements BankService {
                         .build())
                 .body(Mono.just(product), Product.class)
                 .retrieve()
-                .bodyToMono(Product.class);
+                .bodyToMono(Product.class)
+                .doFinally(signal -> productCatalog.invalidate());
     }
 
     @Override
     public Mono<Product> deleteProduct(String id) {
         return webClient.delete()
-                .uri(PRODUCTS_URI + id)
+                .uri(PRODUCTS_URI + "/" + id)
                 .retrieve()
-                .bodyToMono(Product.class);
+                .bodyToMono(Product.class)
+                .doFinally(signal -> productCatalog.invalidate());
+    }
+
+    private Flux<Product> fetchAllProducts() {
+        return webClient.get()
+                .uri(PRODUCTS_URI)
+                .accept(MediaType.APPLICATION_NDJSON, MediaType.APPLICATION_JSON)
+                .retrieve()
+                .bodyToFlux(Product.class);
+    }
+
+    private Mono<Product> fetchProductByCategory(String productCategory) {
+        return getMono(PRODUCTS_URI, "/products/{category}", PRODUCTS_URI + "/" + productCategory, Product.class);
+    }
+
+    private static ProductCategory toProductCategory(String productCategory) {
+        for (ProductCategory category : ProductCategory.values()) {
+            if (category.name().equalsIgnoreCase(productCategory)) {
+                return category;
+            }
+        }
+        return null;
     }
 
     //    CUSTOMERS
@@ -80,27 +315,48 @@ public class BankServiceImpl implements BankService {
     public Flux<Customer> findAllCustomers() {
         return webClient.get()
                 .uri(CUSTOMERS_URI)
+                .accept(MediaType.APPLICATION_NDJSON, MediaType.APPLICATION_JSON)
                 .retrieve()
                 .bodyToFlux(Customer.class);
     }
 
+    @Override
+    public Mono<Page<Customer>> findCustomersPage(int limit, String cursor) {
+        return page(findAllCustomers(), Customer::getId, limit, cursor);
+    }
+
     @Override
     public Flux<Customer> findAllCustomersByCustomerType(String type) {
-        return webClient.get()
-                .uri(uriBuilder -> uriBuilder
-                        .path(CUSTOMERS_URI + "/type")
-                        .queryParam("type", type)
-                        .build())
-                .retrieve()
-                .bodyToFlux(Customer.class);
+        CustomerType customerType = toCustomerType(type);
+        if (customerType == null) {
+            return Flux.error(new ResponseStatusException(HttpStatus.BAD_REQUEST, "Unknown customer type: " + type));
+        }
+        if (!customerTypeIndex.isLoaded()) {
+            return getFlux(CUSTOMERS_URI, "/customers/type", CUSTOMERS_URI + "/type?type=" + customerType, Customer.class)
+                    .doOnNext(customerTypeIndex::put);
+        }
+        return Flux.defer(() -> Flux.fromIterable(customerTypeIndex.customers(customerType)));
+    }
+
+    private static CustomerType toCustomerType(String type) {
+        for (CustomerType customerType : CustomerType.values()) {
+            if (customerType.name().equalsIgnoreCase(type)) {
+                return customerType;
+            }
+        }
+        return null;
     }
 
     @Override
     public Mono<Customer> findCustomerByDocNumber(String docNumber) {
-        return webClient.get()
-                .uri(CUSTOMERS_URI + "/" + docNumber)
-                .retrieve()
-                .bodyToMono(Customer.class);
+        return Mono.defer(() -> {
+            Customer cached = customerCache.getByDocNumber(docNumber);
+            return cached != null ? Mono.just(cached) :
+                    getCustomer("/customers/{docNumber}", CUSTOMERS_URI + "/" + docNumber)
+                            .doOnNext(customerTypeIndex::put)
+                            .onErrorResume(DownstreamGuardFilter::isShed,
+                                    e -> lastKnown(customerTypeIndex.getByDocNumber(docNumber), e));
+        });
     }
 
     @Override
@@ -109,7 +365,9 @@ public class BankServiceImpl implements BankService {
                 .uri(CUSTOMERS_URI)
                 .body(Mono.just(customer), Customer.class)
                 .retrieve()
-                .bodyToMono(Customer.class);
+                .bodyToMono(Customer.class)
+                .doOnNext(customerCache::put)
+                .doOnNext(customerTypeIndex::put);
     }
 
     @Override
@@ -121,7 +379,11 @@ public class BankServiceImpl implements BankService {
                         .build())
                 .body(Mono.just(customer), Customer.class)
                 .retrieve()
-                .bodyToMono(Customer.class);
+                .bodyToMono(Customer.class)
+                .doOnSubscribe(s -> customerCache.evict(customer.getId()))
+                .doOnNext(customerCache::put)
+                .doOnNext(customerTypeIndex::put)
+                .doOnError(e -> customerCache.evict(customer.getId()));
     }
 
     @Override
@@ -129,7 +391,44 @@ public class BankServiceImpl implements BankService {
         return webClient.delete()
                 .uri(CUSTOMERS_URI + "/" + id)
                 .retrieve()
-                .bodyToMono(Customer.class);
+                .bodyToMono(Customer.class)
+                .doOnSuccess(deleted -> customerTypeIndex.remove(id))
+                .doFinally(signal -> customerCache.evict(id));
+    }
+
+    private Mono<Customer> findCustomerById(String id) {
+        return Mono.defer(() -> {
+            Customer cached = customerCache.getById(id);
+            return cached != null ? Mono.just(cached) :
+                    getCustomer("/customers/just/{id}", CUSTOMERS_URI + "/just/" + id)
+                            .doOnNext(customerTypeIndex::put)
+                            .onErrorResume(DownstreamGuardFilter::isShed,
+                                    e -> lastKnown(customerTypeIndex.get(id), e));
+        });
+    }
+
+    // While customer reads are shed (open circuit or full bulkhead) the last state this instance saw, from
+    // a read or a type index refresh, is served instead of a 503
+    private Mono<Customer> lastKnown(Customer customer, Throwable shed) {
+        if (customer == null) {
+            return Mono.error(shed);
+        }
+        log.warn("Serving last known customer {}: {}", customer.getId(), shed.getMessage());
+        return Mono.just(customer);
+    }
+
+    // Coalesced like getMono, but the cache is filled by the shared call itself with the generation read
+    // before that call was sent, so a late joiner cannot cache a response that predates a write
+    private Mono<Customer> getCustomer(String route, String uri) {
+        return coalescer.mono(CUSTOMERS_URI, uri, () -> Mono.defer(() -> {
+            long generation = customerCache.generation();
+            return hedgedReads.mono(route, () -> webClient.get()
+                            .uri(uri)
+                            .retrieve()
+                            .bodyToMono(Customer.class)
+                            .onErrorResume(WebClientResponseException.NotFound.class, e -> Mono.empty()))
+                    .doOnNext(customer -> customerCache.fill(customer, generation));
+        }));
     }
 
     //    PURCHASES
@@ -138,16 +437,21 @@ public class BankServiceImpl implements BankService {
     public Flux<Purchase> findAllPurchases() {
         return webClient.get()
                 .uri(PURCHASES_URI)
+                .accept(MediaType.APPLICATION_NDJSON, MediaType.APPLICATION_JSON)
                 .retrieve()
                 .bodyToFlux(Purchase.class);
     }
 
+    @Override
+    public Mono<Page<Purchase>> findPurchasesPage(int limit, String cursor) {
+        return page(findAllPurchases(), Purchase::getId, limit, cursor);
+    }
+
     @Override
     public Mono<Purchase> findPurchaseById(String id) {
-        return webClient.get()
-                .uri(PURCHASES_URI + "/" + id)
-                .retrieve()
-                .bodyToMono(Purchase.class);
+        return getMono(PURCHASES_URI, "/purchases/{id}", PURCHASES_URI + "/" + id, Purchase.class)
+                .doOnNext(balanceView::seed)
+                .doOnNext(transactionAnalytics::registerPurchase);
     }
 
     @Override
@@ -156,7 +460,9 @@ public class BankServiceImpl implements BankService {
                 .uri(PURCHASES_URI)
                 .body(Mono.just(purchase), Purchase.class)
                 .retrieve()
-                .bodyToMono(Purchase.class);
+                .bodyToMono(Purchase.class)
+                .doOnNext(balanceView::put)
+                .doOnNext(transactionAnalytics::registerPurchase);
     }
 
     @Override
@@ -168,7 +474,9 @@ public class BankServiceImpl implements BankService {
                         .build())
                 .body(Mono.just(purchase), Purchase.class)
                 .retrieve()
-                .bodyToMono(Purchase.class);
+                .bodyToMono(Purchase.class)
+                .doOnNext(balanceView::put)
+                .doOnNext(transactionAnalytics::registerPurchase);
     }
 
     @Override
@@ -176,24 +484,32 @@ public class BankServiceImpl implements BankService {
         return webClient.delete()
                 .uri(PURCHASES_URI + "/" + id)
                 .retrieve()
-                .bodyToMono(Purchase.class);
+                .bodyToMono(Purchase.class)
+                .doOnSuccess(deleted -> {
+                    balanceView.remove(id);
+                    transactionAnalytics.forgetPurchase(id);
+                    transactionLimiter.forget(id);
+                });
     }
 
     //    TRANSACTIONS
     @Override
     public Flux<Transaction> findAllTransactions() {
         return webClient.get()
-                    .uri(TRANSACTIONS_URI)
+                .uri(TRANSACTIONS_URI)
+                .accept(MediaType.APPLICATION_NDJSON, MediaType.APPLICATION_JSON)
                 .retrieve()
                 .bodyToFlux(Transaction.class);
     }
 
+    @Override
+    public Mono<Page<Transaction>> findTransactionsPage(int limit, String cursor) {
+        return page(findAllTransactions(), Transaction::getId, limit, cursor);
+    }
+
     @Override
     public Mono<Transaction> findTransactionById(String id) {
-        return webClient.get()
-                .uri(TRANSACTIONS_URI + "/" + id)
-                .retrieve()
-                .bodyToMono(Transaction.class);
+        return getMono(TRANSACTIONS_URI, "/transactions/{id}", TRANSACTIONS_URI + "/" + id, Transaction.class);
     }
 
     @Override
@@ -202,9 +518,17 @@ public class BankServiceImpl implements BankService {
                 .uri(TRANSACTIONS_URI)
                 .body(Mono.just(transaction), Transaction.class)
                 .retrieve()
-                .bodyToMono(Transaction.class);
+                .bodyToMono(Transaction.class)
+                .doOnNext(transactionAnalytics::record)
+                .doOnNext(recentTransactions::put);
+    }
+
+    @Override
+    public Flux<BatchResult<Transaction>> saveTransactions(Flux<String> lines) {
+        return batch(lines, Transaction.class, this::saveTransaction, "Empty response from transactions service");
     }
 
+    // Reports keep counting the transaction as first saved; only the recent transactions index follows
     @Override
     public Mono<Transaction> updateTransaction(Transaction transaction) {
         return webClient.put()
@@ -214,112 +538,402 @@ public class BankServiceImpl implements BankService {
                         .build())
                 .body(Mono.just(transaction), Transaction.class)
                 .retrieve()
-                .bodyToMono(Transaction.class);
+                .bodyToMono(Transaction.class)
+                .doOnNext(recentTransactions::put);
     }
 
+    // Like updates, deletes are not taken out of the reports
     @Override
     public Mono<Transaction> deleteTransaction(String id) {
         return webClient.delete()
                 .uri(TRANSACTIONS_URI + "/" + id)
                 .retrieve()
-                .bodyToMono(Transaction.class);
+                .bodyToMono(Transaction.class)
+                .doOnSuccess(deleted -> recentTransactions.remove(id));
     }
 
     //    OPERATIONS
 
     @Override
-    public Flux<Purchase> grantProductToCustomer(String customerDocNumber, String productCategory) {
-        Purchase purchase = new Purchase();
+    public Mono<Purchase> grantProductToCustomer(String customerDocNumber, String productCategory) {
+        Mono<Product> productLookup = findProductByCategory(productCategory)
+                .switchIfEmpty(Mono.error(() -> new ResponseStatusException(HttpStatus.NOT_FOUND,
+                        "Product not found: " + productCategory)));
 
-        return webClient.get()
+        return grant(customerDocNumber, productLookup, productCategory);
+    }
+
+    @Override
+    public Flux<BatchResult<Purchase>> grantProducts(Flux<String> lines) {
+        // One catalog snapshot for the whole request instead of one lookup per record
+        Mono<Map<ProductCategory, Product>> catalog = productCatalog.all()
+                .filter(product -> product.getProductCategory() != null)
+                .collectMap(Product::getProductCategory, Function.identity())
+                .cache();
+
+        return batch(lines, GrantRequest.class, request -> {
+            ProductCategory category = toProductCategory(request.getProductCategory());
+            Mono<Product> productLookup = catalog
+                    .flatMap(products -> Mono.justOrEmpty(category != null ? products.get(category) : null))
+                    .switchIfEmpty(Mono.error(() -> new ResponseStatusException(HttpStatus.NOT_FOUND,
+                            "Product not found: " + request.getProductCategory())));
+            return grant(request.getCustomerDocNumber(), productLookup, request.getProductCategory());
+        }, "Empty response from purchases service");
+    }
+
+    // Grants to the same customer run one after another, each reading the customer as the previous one left it
+    private Mono<Purchase> grant(String customerDocNumber, Mono<Product> productLookup, String productCategory) {
+        if (customerDocNumber == null || customerDocNumber.isEmpty()) {
+            return Mono.error(new ResponseStatusException(HttpStatus.BAD_REQUEST, "Customer document number is required"));
+        }
+        // Neither cached nor coalesced: either could hand out the customer from before the previous grant's update
+        Mono<Customer> customerLookup = webClient.get()
                 .uri(CUSTOMERS_URI + "/" + customerDocNumber)
                 .retrieve()
-                .bodyToFlux(Customer.class)
-                .next()
-                .flatMap(customer -> {
-                    String customerType = customer.getCustomerType().toString();
-                    if (productCategory.equalsIgnoreCase("CUENTA_BANCARIA_AHORRO") ||
-                    productCategory.equalsIgnoreCase("CUENTA_BANCARIA_CUENTA_CORRIENTE") ||
-                            productCategory.equalsIgnoreCase("CUENTA_BANCARIA_PLAZO_FIJO")) {
+                .bodyToMono(Customer.class)
+                .onErrorResume(WebClientResponseException.NotFound.class, e -> Mono.empty())
+                .switchIfEmpty(Mono.error(() -> new ResponseStatusException(HttpStatus.NOT_FOUND,
+                        "Customer not found: " + customerDocNumber)));
+
+        return customerGrants.serialize(customerDocNumber, () -> Mono.zip(customerLookup, productLookup)
+                .flatMap(tuple -> {
+                    Customer customer = copyOf(tuple.getT1(), new Customer());
+                    Product product = tuple.getT2();
+
+                    if (product.getProductType() == ProductType.PASIVE) {
                         customer.setOwnedPasiveProductsQty(customer.getOwnedPasiveProductsQty() + 1);
                     } else {
                         customer.setOwnedActiveProductsQty(customer.getOwnedActiveProductsQty() + 1);
                     }
 
+                    Purchase purchase = new Purchase();
                     purchase.setCustomerId(customer.getId());
                     purchase.setCustomerType(customer.getCustomerType().toString());
                     purchase.setCustomerName(customer.getName());
-                    purchase.setProductCategory(productCategory);
-                    return Mono.just(purchase);
-                })
-                .concatWith(webClient.get()
-                        .uri(PRODUCTS_URI + "/" + productCategory)
-                        .retrieve()
-                        .bodyToFlux(Product.class)
-                        .next()
-                        .flatMap(product -> {
-                            purchase.setProductId(product.getId());
-                            purchase.setProductType(product.getProductType().toString());
-                            return savePurchase(purchase);
-                        }));
+                    purchase.setProductId(product.getId());
+                    purchase.setProductType(product.getProductType().toString());
+                    purchase.setProductCategory(product.getProductCategory() != null ?
+                            product.getProductCategory().toString() : productCategory.toUpperCase());
+
+                    return Mono.zip(savePurchase(purchase), updateCustomer(customer))
+                            .map(Tuple2::getT1);
+                }));
+    }
 
+    @Override
+    public Mono<Transaction> deposit(String customerId, String purchaseId, double amount) {
+        return operate(customerId, purchaseId, amount, "DEPOSIT");
     }
 
     @Override
-    public Flux<Transaction> deposit(String customerId, String purchaseId, double amount) {
-        Transaction transaction = new Transaction();
+    public Mono<Transaction> withdraw(String customerId, String purchaseId, double amount) {
+        return operate(customerId, purchaseId, amount, "WITHDRAWAL");
+    }
 
-        return webClient.get()
-                .uri(CUSTOMERS_URI + "/just/" + customerId)
+    // Applies the balance change to a single purchase of the customer and records it as one transaction
+    private Mono<Transaction> operate(String customerId, String purchaseId, double amount, String transactionType) {
+        if (!(amount > 0) || !BalanceView.fitsMinorUnits(amount)) {
+            return Mono.error(new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                    "Amount must be a positive number within the balance range"));
+        }
+        double delta = "WITHDRAWAL".equals(transactionType) ? -amount : amount;
+        Mono<Customer> customerLookup = findCustomerById(customerId)
+                .switchIfEmpty(Mono.error(() -> new ResponseStatusException(HttpStatus.NOT_FOUND,
+                        "Customer not found: " + customerId)));
+        // Not coalesced: a read that started before the previous operation's write would carry a stale balance
+        Mono<Purchase> purchaseLookup = webClient.get()
+                .uri(PURCHASES_URI + "/" + purchaseId)
                 .retrieve()
-                .bodyToFlux(Customer.class)
-                .next()
-                .flatMap(customer -> {
+                .bodyToMono(Purchase.class)
+                .onErrorResume(WebClientResponseException.NotFound.class, e -> Mono.empty())
+                .doOnNext(balanceView::seed)
+                .doOnNext(transactionAnalytics::registerPurchase)
+                .switchIfEmpty(Mono.error(() -> new ResponseStatusException(HttpStatus.NOT_FOUND,
+                        "Purchase not found: " + purchaseId)));
+
+        // Operations on the same purchase run one after another so none of them reads a balance being replaced
+        return purchaseOperations.serialize(purchaseId, () -> Mono.zip(customerLookup, purchaseLookup)
+                .flatMap(tuple -> {
+                    Customer customer = tuple.getT1();
+                    Purchase purchase = copyOf(tuple.getT2(), new Purchase());
+
+                    if (!customer.getId().equals(purchase.getCustomerId())) {
+                        return Mono.error(new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                                "Purchase " + purchaseId + " does not belong to customer " + customerId));
+                    }
+                    double balance = purchase.getBalance() != null ? purchase.getBalance() : 0;
+                    if (!BalanceView.fitsMinorUnits(balance + delta)) {
+                        return Mono.error(new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                                "Resulting balance of purchase " + purchaseId + " is out of range"));
+                    }
+                    // Accounts cannot go below zero; credit products may be drawn down to their credit limit
+                    if (ProductType.ACTIVE.name().equals(purchase.getProductType())) {
+                        if (purchase.getCreditLimitAmount() != null && balance + delta < -purchase.getCreditLimitAmount()) {
+                            return Mono.error(new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                                    "Credit limit exceeded in purchase " + purchaseId));
+                        }
+                    } else if (balance + delta < 0) {
+                        return Mono.error(new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                                "Insufficient balance in purchase " + purchaseId));
+                    }
+                    int operationsThisMonth = transactionLimiter.tryAcquire(purchase);
+                    if (operationsThisMonth == MonthlyTransactionLimiter.REJECTED) {
+                        return Mono.error(new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                                "Monthly transaction limit reached for purchase " + purchaseId));
+                    }
+                    purchase.setBalance(balance + delta);
+                    if (operationsThisMonth != MonthlyTransactionLimiter.UNLIMITED) {
+                        purchase.setTransactionsMadeByCustomerInCurrentMonth(operationsThisMonth);
+                    }
+
+                    Transaction transaction = new Transaction();
                     transaction.setCustomerId(customer.getId());
-                    transaction.setTransactionType("DEPOSIT");
+                    transaction.setPurchaseId(purchase.getId());
+                    transaction.setTransactionType(transactionType);
                     transaction.setAmount(amount);
-                    return Mono.just(transaction);
-                })
-                .concatWith(webClient.get()
-                        .uri(PURCHASES_URI + "/customer/" + customerId)
-                        .retrieve()
-                        .bodyToFlux(Purchase.class)
-                        .flatMap(purchase -> {
-                            transaction.setPurchaseId(purchase.getId());
-                            return saveTransaction(transaction);
-                        }));
+                    transaction.setEmittedAt(new Date());
+
+                    // The transaction is recorded before the balance moves, so a balance never changes without
+                    // one. Once it is recorded the operation counts against the monthly limit even if the
+                    // balance update then fails.
+                    AtomicBoolean recorded = new AtomicBoolean();
+                    return saveTransaction(transaction)
+                            .doOnNext(saved -> recorded.set(true))
+                            .flatMap(saved -> updatePurchase(purchase)
+                                    .doOnError(e -> log.error("Transaction {} recorded but balance of purchase {} not updated: {}",
+                                            saved.getId(), purchaseId, e.toString()))
+                                    .thenReturn(saved))
+                            .doOnError(e -> {
+                                if (!recorded.get()) {
+                                    transactionLimiter.release(purchaseId, operationsThisMonth);
+                                }
+                            })
+                            .doOnCancel(() -> {
+                                if (!recorded.get()) {
+                                    transactionLimiter.release(purchaseId, operationsThisMonth);
+                                }
+                            });
+                }));
     }
 
+    // Served from the balance view; a purchase not seen yet is read from downstream once and added to it
     @Override
-    public Flux<Transaction> withdraw(String customerId, String purchaseId, double amount) {
-        Transaction transaction = new Transaction();
+    public Mono<Balance> findBalance(String purchaseId) {
+        OptionalLong balance = balanceView.get(purchaseId);
+        if (balance.isPresent()) {
+            return Mono.just(new Balance(purchaseId, BalanceView.toAmount(balance.getAsLong())));
+        }
+        // A balance the view cannot hold is answered as read
+        return findPurchaseById(purchaseId)
+                .map(purchase -> {
+                    OptionalLong seeded = balanceView.get(purchaseId);
+                    return new Balance(purchaseId, seeded.isPresent() ? BalanceView.toAmount(seeded.getAsLong()) :
+                            purchase.getBalance() != null ? purchase.getBalance() : 0);
+                });
+    }
 
-        return webClient.get()
-                .uri(CUSTOMERS_URI + "/just/" + customerId)
-                .retrieve()
-                .bodyToFlux(Customer.class)
-                .next()
+    // The customer is required; purchases and recent transactions are then fetched concurrently and each is
+    // left out, and listed as unavailable, when it fails or exceeds the section timeout
+    @Override
+    public Mono<Portfolio> findCustomerPortfolio(String customerDocNumber, Integer recentTransactions) {
+        int perPurchase = recentTransactions != null ? recentTransactions : portfolioProperties.getRecentTransactions();
+        if (perPurchase < 0 || perPurchase > portfolioProperties.getMaxRecentTransactions()) {
+            return Mono.error(new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                    "transactions must be between 0 and " + portfolioProperties.getMaxRecentTransactions()));
+        }
+        return findCustomerByDocNumber(customerDocNumber)
                 .flatMap(customer -> {
-                    transaction.setCustomerId(customer.getId());
-                    transaction.setTransactionType("WITHDRAWAL");
-                    transaction.setAmount(amount);
-                    return Mono.just(transaction);
+                    Mono<Optional<List<Purchase>>> purchases = section("purchases",
+                            displayCustomerPurchases(customer.getId()).collectList());
+                    Mono<Optional<Map<String, List<Transaction>>>> transactions = perPurchase == 0 ?
+                            Mono.just(Optional.of(Collections.emptyMap())) :
+                            section("transactions", recentTransactionsOf(customer.getId(), perPurchase));
+                    return Mono.zip(purchases, transactions)
+                            .map(sections -> {
+                                List<String> unavailable = new ArrayList<>();
+                                if (!sections.getT1().isPresent()) {
+                                    unavailable.add("purchases");
+                                }
+                                if (!sections.getT2().isPresent()) {
+                                    unavailable.add("transactions");
+                                }
+                                return new Portfolio(customer, sections.getT1().orElse(null),
+                                        sections.getT2().orElse(null), unavailable.isEmpty() ? null : unavailable);
+                            });
+                });
+    }
+
+    private <T> Mono<Optional<T>> section(String name, Mono<T> source) {
+        return source
+                .timeout(portfolioProperties.getSectionTimeout())
+                .map(Optional::of)
+                .onErrorResume(e -> {
+                    log.warn("Portfolio section {} unavailable: {}", name, e.toString());
+                    return Mono.just(Optional.empty());
+                });
+    }
+
+    // Downstream has no per-customer transaction query, so this is served from the recent transactions
+    // index, or by scanning the transaction stream for the newest transactions of each purchase until the
+    // index is loaded
+    private Mono<Map<String, List<Transaction>>> recentTransactionsOf(String customerId, int perPurchase) {
+        if (recentTransactions.isLoaded()) {
+            return Mono.fromSupplier(() -> recentTransactions.recent(customerId, perPurchase));
+        }
+        Comparator<Transaction> oldestFirst = Comparator.comparing(Transaction::getEmittedAt,
+                Comparator.nullsFirst(Comparator.naturalOrder()));
+        return findAllTransactions()
+                .filter(transaction -> customerId.equals(transaction.getCustomerId()) && transaction.getPurchaseId() != null)
+                .collect(HashMap<String, PriorityQueue<Transaction>>::new, (newest, transaction) -> {
+                    PriorityQueue<Transaction> queue = newest.computeIfAbsent(transaction.getPurchaseId(),
+                            id -> new PriorityQueue<>(perPurchase + 1, oldestFirst));
+                    queue.add(transaction);
+                    if (queue.size() > perPurchase) {
+                        queue.poll();
+                    }
                 })
-                .concatWith(webClient.get()
-                        .uri(PURCHASES_URI + "/customer/" + customerId)
-                        .retrieve()
-                        .bodyToFlux(Purchase.class)
-                        .flatMap(purchase -> {
-                            transaction.setPurchaseId(purchase.getId());
-                            return saveTransaction(transaction);
-                        }));
+                .map(newest -> {
+                    Map<String, List<Transaction>> recent = new LinkedHashMap<>();
+                    newest.forEach((purchaseId, queue) -> {
+                        List<Transaction> transactions = new ArrayList<>(queue);
+                        transactions.sort(oldestFirst.reversed());
+                        recent.put(purchaseId, transactions);
+                    });
+                    return recent;
+                });
     }
 
     @Override
     public Flux<Purchase> displayCustomerPurchases(String customerId) {
-        return webClient.get()
-                .uri(PURCHASES_URI + "/customer/" + customerId)
+        return getFlux(PURCHASES_URI, "/purchases/customer/{customerId}", PURCHASES_URI + "/customer/" + customerId, Purchase.class);
+    }
+
+    //    REPORTS
+
+    @Override
+    public Mono<Report> findDailyReport(LocalDate day, String groupBy) {
+        LocalDate period = day != null ? day : transactionAnalytics.currentDay();
+        return report(groupBy, (byCategory, byCustomerType) -> transactionAnalytics.daily(period, byCategory, byCustomerType));
+    }
+
+    @Override
+    public Mono<Report> findMonthlyReport(YearMonth month, String groupBy) {
+        YearMonth period = month != null ? month : YearMonth.from(transactionAnalytics.currentDay());
+        return report(groupBy, (byCategory, byCustomerType) -> transactionAnalytics.monthly(period, byCategory, byCustomerType));
+    }
+
+    // groupBy lists the dimensions to break the totals down by: productCategory, customerType or both (default)
+    private static Mono<Report> report(String groupBy, BiFunction<Boolean, Boolean, Report> read) {
+        boolean byCategory = true;
+        boolean byCustomerType = true;
+        if (groupBy != null) {
+            List<String> dimensions = Arrays.asList(groupBy.split(","));
+            byCategory = dimensions.contains("productCategory");
+            byCustomerType = dimensions.contains("customerType");
+            if (dimensions.stream().anyMatch(d -> !d.equals("productCategory") && !d.equals("customerType") && !d.isEmpty())) {
+                return Mono.error(new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                        "groupBy accepts productCategory and customerType"));
+            }
+        }
+        Report report = read.apply(byCategory, byCustomerType);
+        return report != null ? Mono.just(report) :
+                Mono.error(new ResponseStatusException(HttpStatus.NOT_FOUND, "Period is outside the retained reports"));
+    }
+
+    // Cached and coalesced responses are shared between requests, so operations work on their own copy
+    private static <T> T copyOf(T source, T copy) {
+        BeanUtils.copyProperties(source, copy);
+        return copy;
+    }
+
+    // Identical concurrent GETs share one downstream call
+    // route is the uri template, which selects the hedging settings
+    // A 404 from downstream is an empty result, so callers answer it with their own not-found handling
+    private <T> Mono<T> getMono(String resource, String route, String uri, Class<T> type) {
+        return coalescer.mono(resource, uri, () -> hedgedReads.mono(route, () -> webClient.get()
+                .uri(uri)
                 .retrieve()
-                .bodyToFlux(Purchase.class);
+                .bodyToMono(type)
+                .onErrorResume(WebClientResponseException.NotFound.class, e -> Mono.empty())));
+    }
+
+    private <T> Flux<T> getFlux(String resource, String route, String uri, Class<T> type) {
+        return coalescer.flux(resource, uri, () -> hedgedReads.flux(route, () -> webClient.get()
+                .uri(uri)
+                .retrieve()
+                .bodyToFlux(type)));
+    }
+
+    // Decodes each NDJSON line on its own, so a malformed record fails only its own result. Blank lines are
+    // skipped and do not take an index. Records are processed concurrently; results arrive as they finish.
+    private <T, R> Flux<BatchResult<R>> batch(Flux<String> lines, Class<T> type, Function<T, Mono<R>> process,
+                                              String emptyResponse) {
+        int concurrency = Math.max(1, batchProperties.getConcurrency());
+        return lines
+                .filter(line -> !line.trim().isEmpty())
+                .index()
+                .flatMap(indexed -> {
+                            long index = indexed.getT1();
+                            T record;
+                            try {
+                                record = objectMapper.readValue(indexed.getT2(), type);
+                            } catch (JsonProcessingException e) {
+                                return Mono.just(BatchResult.<R>error(index, "Malformed record: " + e.getOriginalMessage()));
+                            }
+                            if (record == null) {
+                                return Mono.just(BatchResult.<R>error(index, "Malformed record: null"));
+                            }
+                            return Mono.defer(() -> process.apply(record))
+                                    .map(result -> BatchResult.ok(index, result))
+                                    .defaultIfEmpty(BatchResult.error(index, emptyResponse))
+                                    .onErrorResume(e -> Mono.just(BatchResult.error(index, e.getMessage())));
+                        },
+                        concurrency, 1);
+    }
+
+    // Cursor pages over a downstream collection in its natural order. The cursor encodes the id of the last
+    // element returned; reading stops (and the downstream response is cancelled) one element past the page.
+    // The backend has no keyed range reads, so each page re-reads the collection from its start up to the
+    // cursor, and a cursor whose element has since been deleted can no longer be resumed (410).
+    private static <T> Mono<Page<T>> page(Flux<T> source, Function<T, String> idOf, int limit, String cursor) {
+        if (limit < 1 || limit > MAX_PAGE_SIZE) {
+            return Mono.error(new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                    "limit must be between 1 and " + MAX_PAGE_SIZE));
+        }
+        if (cursor == null || cursor.isEmpty()) {
+            return takePage(source, idOf, limit);
+        }
+        String lastId;
+        try {
+            lastId = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+        } catch (IllegalArgumentException e) {
+            return Mono.error(new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid cursor"));
+        }
+        return Mono.defer(() -> {
+            AtomicBoolean found = new AtomicBoolean();
+            Flux<T> remaining = source
+                    .skipUntil(item -> lastId.equals(idOf.apply(item)) && found.compareAndSet(false, true))
+                    .skip(1);
+            return takePage(remaining, idOf, limit)
+                    .flatMap(page -> page.getItems().isEmpty() && !found.get()
+                            ? Mono.error(new ResponseStatusException(HttpStatus.GONE,
+                                    "Cursor no longer valid; restart from the first page"))
+                            : Mono.just(page));
+        });
+    }
+
+    private static <T> Mono<Page<T>> takePage(Flux<T> source, Function<T, String> idOf, int limit) {
+        return source
+                .take(limit + 1L)
+                .collectList()
+                .map(items -> {
+                    if (items.size() <= limit) {
+                        return new Page<>(items, null);
+                    }
+                    List<T> pageItems = items.subList(0, limit);
+                    String next = Base64.getUrlEncoder().withoutPadding()
+                            .encodeToString(idOf.apply(pageItems.get(limit - 1)).getBytes(StandardCharsets.UTF_8));
+                    return new Page<>(pageItems, next);
+                });
     }
 }
@@ -0,0 +1,92 @@
+package com.nttdata.bank.analytics;
+
+import com.nttdata.bank.client.Purchase;
+import com.nttdata.bank.client.Transaction;
+import com.nttdata.bank.dto.Report;
+import org.junit.jupiter.api.Test;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.time.ZoneOffset;
+import java.util.Date;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TransactionAnalyticsTest {
+
+    private static final Instant NOW = Instant.parse("2022-08-02T10:00:00Z");
+
+    private final TransactionAnalytics analytics = new TransactionAnalytics(Clock.fixed(NOW, ZoneOffset.UTC), 3, 2);
+
+    @Test
+    void aggregatesByDayAndMonthAcrossRequestedDimensions() {
+        Purchase purchase = new Purchase();
+        purchase.setId("purchase-0-0");
+        purchase.setProductCategory("CUENTA_BANCARIA_AHORRO");
+        purchase.setCustomerType("PERSON");
+        analytics.registerPurchase(purchase);
+
+        analytics.record(transaction("purchase-0-0", "DEPOSIT", 10.25, "2022-08-02T09:00:00Z"));
+        analytics.record(transaction("purchase-0-0", "DEPOSIT", 5.00, "2022-08-02T09:30:00Z"));
+        analytics.record(transaction("purchase-0-0", "WITHDRAWAL", 3.00, "2022-08-01T12:00:00Z"));
+        analytics.record(transaction("unknown", "DEPOSIT", 1.00, "2022-07-31T12:00:00Z"));
+
+        Report today = analytics.daily(LocalDate.parse("2022-08-02"), true, true);
+        assertEquals(1, today.getRows().size());
+        assertEquals("CUENTA_BANCARIA_AHORRO", today.getRows().get(0).getProductCategory());
+        assertEquals(2, today.getRows().get(0).getCount());
+        assertEquals(15.25, today.getRows().get(0).getAmount());
+
+        Report august = analytics.monthly(YearMonth.parse("2022-08"), false, false);
+        assertEquals(2, august.getRows().size());
+        assertNull(august.getRows().get(0).getProductCategory());
+
+        Report july = analytics.monthly(YearMonth.parse("2022-07"), true, false);
+        assertEquals(TransactionAnalytics.UNKNOWN, july.getRows().get(0).getProductCategory());
+    }
+
+    @Test
+    void amountsBeyondMinorUnitsAreLeftOut() {
+        analytics.record(transaction("purchase-0-0", "DEPOSIT", 1e17, "2022-08-02T09:00:00Z"));
+        analytics.record(transaction("purchase-0-0", "DEPOSIT", 2.00, "2022-08-02T09:30:00Z"));
+
+        Report today = analytics.daily(LocalDate.parse("2022-08-02"), false, false);
+        assertEquals(1, today.getRows().get(0).getCount());
+        assertEquals(2.00, today.getRows().get(0).getAmount());
+    }
+
+    @Test
+    void periodsOutsideRetentionAreNotReported() {
+        analytics.record(transaction("purchase-0-0", "DEPOSIT", 1.00, "2022-07-30T12:00:00Z"));
+
+        assertNull(analytics.daily(LocalDate.parse("2022-07-30"), true, true));
+        assertTrue(analytics.daily(LocalDate.parse("2022-07-31"), true, true).getRows().isEmpty());
+        assertNull(analytics.monthly(YearMonth.parse("2022-06"), true, true));
+    }
+
+    @Test
+    void transactionSavedDuringTheLoadAndReadBackCountsOnce() {
+        Transaction saved = transaction("purchase-0-0", "DEPOSIT", 2.00, "2022-08-01T12:00:00Z");
+        saved.setId("transaction-1");
+
+        analytics.beginLoad();
+        analytics.record(saved);
+        analytics.record(saved);
+        analytics.endLoad();
+
+        assertEquals(1, analytics.daily(LocalDate.parse("2022-08-01"), false, false).getRows().get(0).getCount());
+    }
+
+    private static Transaction transaction(String purchaseId, String type, double amount, String emittedAt) {
+        Transaction transaction = new Transaction();
+        transaction.setPurchaseId(purchaseId);
+        transaction.setTransactionType(type);
+        transaction.setAmount(amount);
+        transaction.setEmittedAt(Date.from(Instant.parse(emittedAt)));
+        return transaction;
+    }
+}
@@ -0,0 +1,85 @@
+package com.nttdata.bank.cache;
+
+import com.nttdata.bank.client.Purchase;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Sinks;
+
+import java.util.OptionalLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BalanceViewTest {
+
+    @Test
+    void readsOnlySeedMissingEntries() {
+        BalanceView view = new BalanceView();
+        view.put(purchase("purchase-0-0", 250.0));
+        view.seed(purchase("purchase-0-0", 100.0));
+        view.seed(purchase("purchase-0-1", null));
+
+        assertEquals(OptionalLong.of(25_000), view.get("purchase-0-0"));
+        assertEquals(OptionalLong.of(0), view.get("purchase-0-1"));
+        assertEquals(OptionalLong.empty(), view.get("purchase-9-9"));
+    }
+
+    @Test
+    void rebuildReplacesBalancesChangedElsewhere() {
+        BalanceView view = new BalanceView();
+        view.seed(purchase("purchase-0-0", 100.0));
+        view.seed(purchase("purchase-0-1", 100.0));
+
+        view.rebuild(Flux.just(purchase("purchase-0-0", 75.5), purchase("purchase-0-2", 10.0))).block();
+
+        assertEquals(OptionalLong.of(7_550), view.get("purchase-0-0"));
+        assertEquals(OptionalLong.empty(), view.get("purchase-0-1"));
+        assertEquals(OptionalLong.of(1_000), view.get("purchase-0-2"));
+    }
+
+    @Test
+    void rebuildKeepsWhatWasWrittenWhileItRan() {
+        BalanceView view = new BalanceView();
+        view.seed(purchase("purchase-0-2", 30.0));
+        Sinks.Many<Purchase> purchases = Sinks.many().unicast().onBackpressureBuffer();
+        view.rebuild(purchases.asFlux()).subscribe();
+        // Skipped while the first rebuild is running
+        view.rebuild(Flux.just(purchase("purchase-0-0", 1.0))).block();
+
+        view.put(purchase("purchase-0-0", 500.0));
+        view.remove("purchase-0-1");
+        purchases.tryEmitNext(purchase("purchase-0-0", 400.0));
+        purchases.tryEmitNext(purchase("purchase-0-1", 400.0));
+        purchases.tryEmitComplete();
+
+        assertEquals(OptionalLong.of(50_000), view.get("purchase-0-0"));
+        assertEquals(OptionalLong.empty(), view.get("purchase-0-1"));
+        assertEquals(OptionalLong.empty(), view.get("purchase-0-2"));
+    }
+
+    @Test
+    void balancesBeyondMinorUnitsAreLeftOut() {
+        BalanceView view = new BalanceView();
+        view.put(purchase("purchase-0-0", 100.0));
+        view.put(purchase("purchase-0-0", 1e17));
+        view.seed(purchase("purchase-0-1", -1e17));
+        view.rebuild(Flux.just(purchase("purchase-0-2", 1e300), purchase("purchase-0-3", 5.0))).block();
+
+        assertEquals(OptionalLong.empty(), view.get("purchase-0-0"));
+        assertEquals(OptionalLong.empty(), view.get("purchase-0-1"));
+        assertEquals(OptionalLong.empty(), view.get("purchase-0-2"));
+        assertEquals(OptionalLong.of(500), view.get("purchase-0-3"));
+        assertTrue(BalanceView.fitsMinorUnits(9e16));
+        // The nearest double to Long.MAX_VALUE cents is already above it
+        assertFalse(BalanceView.fitsMinorUnits(BalanceView.toAmount(Long.MAX_VALUE)));
+        assertFalse(BalanceView.fitsMinorUnits(Double.NaN));
+    }
+
+    private static Purchase purchase(String id, Double balance) {
+        Purchase purchase = new Purchase();
+        purchase.setId(id);
+        purchase.setBalance(balance);
+        return purchase;
+    }
+}
@@ -0,0 +1,97 @@
+package com.nttdata.bank.cache;
+
+import com.nttdata.bank.client.Customer;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class CustomerCacheTest {
+
+    @Test
+    void indexesCustomersByIdAndDocNumber() {
+        CustomerCache cache = new CustomerCache(100, Duration.ofMinutes(5));
+        Customer customer = customer("customer-0", "10000000", "Before");
+        cache.fill(customer, cache.generation());
+
+        assertSame(customer, cache.getById("customer-0"));
+        assertSame(customer, cache.getByDocNumber("10000000"));
+
+        // A new document number replaces the old one in the index
+        Customer renumbered = customer("customer-0", "20000000", "After");
+        cache.put(renumbered);
+        assertSame(renumbered, cache.getByDocNumber("20000000"));
+        assertNull(cache.getByDocNumber("10000000"));
+
+        cache.evict("customer-0");
+        assertNull(cache.getById("customer-0"));
+        assertNull(cache.getByDocNumber("20000000"));
+    }
+
+    @Test
+    void fillReadBeforeAPutIsDropped() {
+        CustomerCache cache = new CustomerCache(100, Duration.ofMinutes(5));
+        long readGeneration = cache.generation();
+        Customer written = customer("customer-0", "10000000", "Written");
+        cache.put(written);
+
+        cache.fill(customer("customer-0", "10000000", "Stale"), readGeneration);
+
+        assertSame(written, cache.getById("customer-0"));
+        assertSame(written, cache.getByDocNumber("10000000"));
+    }
+
+    @Test
+    void fillReadBeforeAnEvictIsDropped() {
+        CustomerCache cache = new CustomerCache(100, Duration.ofMinutes(5));
+        cache.put(customer("customer-0", "10000000", "Cached"));
+        long readGeneration = cache.generation();
+        cache.evict("customer-0");
+
+        cache.fill(customer("customer-0", "10000000", "Stale"), readGeneration);
+
+        assertNull(cache.getById("customer-0"));
+        assertNull(cache.getByDocNumber("10000000"));
+    }
+
+    @Test
+    void writesToOtherCustomersDoNotDropAFill() {
+        CustomerCache cache = new CustomerCache(100, Duration.ofMinutes(5));
+        long readGeneration = cache.generation();
+        cache.put(customer("customer-1", "10000001", "Other"));
+        cache.evict("customer-2");
+
+        Customer read = customer("customer-0", "10000000", "Read");
+        cache.fill(read, readGeneration);
+
+        assertSame(read, cache.getById("customer-0"));
+    }
+
+    @Test
+    void fillReadBeforeStampsArePrunedIsDropped() {
+        CustomerCache cache = new CustomerCache(2, Duration.ofMinutes(5));
+        long readGeneration = cache.generation();
+        for (int i = 1; i <= 3; i++) {
+            cache.evict("customer-" + i);
+        }
+
+        cache.fill(customer("customer-0", "10000000", "Unknown"), readGeneration);
+        assertNull(cache.getById("customer-0"));
+
+        Customer read = customer("customer-0", "10000000", "Read");
+        cache.fill(read, cache.generation());
+        assertSame(read, cache.getById("customer-0"));
+        assertEquals(1, cache.size());
+    }
+
+    private static Customer customer(String id, String docNumber, String name) {
+        Customer customer = new Customer();
+        customer.setId(id);
+        customer.setDocNumber(docNumber);
+        customer.setName(name);
+        return customer;
+    }
+}
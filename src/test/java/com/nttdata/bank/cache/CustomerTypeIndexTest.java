@@ -0,0 +1,101 @@
+package com.nttdata.bank.cache;
+
+import com.nttdata.bank.client.Customer;
+import com.nttdata.bank.client.enums.CustomerType;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Sinks;
+
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CustomerTypeIndexTest {
+
+    @Test
+    void refreshReplacesTheIndex() {
+        CustomerTypeIndex index = new CustomerTypeIndex();
+        index.put(customer("customer-9", "10000009", CustomerType.PERSON));
+        assertFalse(index.isLoaded());
+
+        index.refresh(Flux.just(customer("customer-0", "10000000", CustomerType.ENTERPRISE),
+                customer("customer-1", "10000001", CustomerType.PERSON))).block();
+
+        assertTrue(index.isLoaded());
+        assertEquals(Set.of("customer-0"), ids(index, CustomerType.ENTERPRISE));
+        assertEquals(Set.of("customer-1"), ids(index, CustomerType.PERSON));
+        assertNull(index.get("customer-9"));
+        assertNull(index.getByDocNumber("10000009"));
+    }
+
+    @Test
+    void refreshKeepsWhatWasWrittenWhileItRan() {
+        CustomerTypeIndex index = new CustomerTypeIndex();
+        index.put(customer("customer-2", "10000002", CustomerType.PERSON));
+        Sinks.Many<Customer> customers = Sinks.many().unicast().onBackpressureBuffer();
+        index.refresh(customers.asFlux()).subscribe();
+        // Skipped while the first refresh is running
+        index.refresh(Flux.just(customer("customer-0", "10000000", CustomerType.PERSON))).block();
+
+        Customer written = customer("customer-0", "20000000", CustomerType.ENTERPRISE);
+        index.put(written);
+        index.remove("customer-1");
+        customers.tryEmitNext(customer("customer-0", "10000000", CustomerType.PERSON));
+        customers.tryEmitNext(customer("customer-1", "10000001", CustomerType.PERSON));
+        customers.tryEmitComplete();
+
+        assertSame(written, index.get("customer-0"));
+        assertSame(written, index.getByDocNumber("20000000"));
+        assertNull(index.getByDocNumber("10000000"));
+        assertEquals(Set.of("customer-0"), ids(index, CustomerType.ENTERPRISE));
+        assertEquals(Set.of(), ids(index, CustomerType.PERSON));
+        assertNull(index.get("customer-1"));
+        assertEquals(1, index.size());
+
+        // Once done, later refreshes replace written entries again
+        index.refresh(Flux.just(customer("customer-0", "10000000", CustomerType.PERSON))).block();
+        assertEquals(Set.of("customer-0"), ids(index, CustomerType.PERSON));
+        assertEquals("10000000", index.get("customer-0").getDocNumber());
+    }
+
+    @Test
+    void lastKnownCustomerIsFoundByIdAndDocNumber() {
+        CustomerTypeIndex index = new CustomerTypeIndex();
+        Customer customer = customer("customer-0", "10000000", CustomerType.PERSON);
+        index.put(customer);
+
+        assertSame(customer, index.get("customer-0"));
+        assertSame(customer, index.getByDocNumber("10000000"));
+        assertNull(index.get(null));
+        assertNull(index.getByDocNumber(null));
+
+        // A changed type and document number move the customer in both indexes
+        Customer changed = customer("customer-0", "20000000", CustomerType.ENTERPRISE);
+        index.put(changed);
+        assertSame(changed, index.getByDocNumber("20000000"));
+        assertNull(index.getByDocNumber("10000000"));
+        assertEquals(Set.of(), ids(index, CustomerType.PERSON));
+        assertEquals(Set.of("customer-0"), ids(index, CustomerType.ENTERPRISE));
+
+        index.remove("customer-0");
+        assertNull(index.get("customer-0"));
+        assertNull(index.getByDocNumber("20000000"));
+    }
+
+    private static Set<String> ids(CustomerTypeIndex index, CustomerType type) {
+        return index.customers(type).stream().map(Customer::getId).collect(Collectors.toSet());
+    }
+
+    private static Customer customer(String id, String docNumber, CustomerType type) {
+        Customer customer = new Customer();
+        customer.setId(id);
+        customer.setDocNumber(docNumber);
+        customer.setCustomerType(type);
+        return customer;
+    }
+}
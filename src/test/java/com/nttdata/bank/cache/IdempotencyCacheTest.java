@@ -0,0 +1,80 @@
+package com.nttdata.bank.cache;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class IdempotencyCacheTest {
+
+    private final IdempotencyCache cache = new IdempotencyCache(100, Duration.ofMinutes(1));
+    private final AtomicInteger calls = new AtomicInteger();
+
+    @Test
+    void retryJoinsTheRunningOperationEvenAfterTheFirstCallerLeft() {
+        Disposable first = cache.execute("deposit", "key-1", "a", () -> slowCall("done")).subscribe();
+        first.dispose();
+
+        StepVerifier.create(cache.execute("deposit", "key-1", "a", () -> slowCall("again")))
+                .expectNext("done")
+                .expectComplete()
+                .verify(Duration.ofSeconds(5));
+        assertEquals(1, calls.get());
+        assertEquals(1, cache.replayCount());
+    }
+
+    @Test
+    void retryAfterCompletionReplaysTheResult() {
+        assertEquals("done", cache.execute("deposit", "key-1", "a", () -> call(Mono.just("done"))).block());
+
+        StepVerifier.create(cache.execute("deposit", "key-1", "a", () -> call(Mono.just("again"))))
+                .expectNext("done")
+                .expectComplete()
+                .verify(Duration.ofSeconds(5));
+        assertEquals(1, calls.get());
+        // Same key on another operation is another request
+        assertEquals("other", cache.execute("withdraw", "key-1", "a", () -> call(Mono.just("other"))).block());
+    }
+
+    @Test
+    void failedOperationsAreForgottenSoTheyCanBeRetried() {
+        StepVerifier.create(cache.execute("deposit", "key-1", "a",
+                        () -> call(Mono.<String>error(new IllegalStateException("downstream failed")))))
+                .expectError(IllegalStateException.class)
+                .verify(Duration.ofSeconds(5));
+
+        StepVerifier.create(cache.execute("deposit", "key-1", "a", () -> call(Mono.just("done"))))
+                .expectNext("done")
+                .expectComplete()
+                .verify(Duration.ofSeconds(5));
+        assertEquals(2, calls.get());
+        assertEquals(0, cache.replayCount());
+    }
+
+    @Test
+    void keyReusedForADifferentRequestIsRejected() {
+        assertEquals("done", cache.execute("deposit", "key-1", "a", () -> call(Mono.just("done"))).block());
+
+        StepVerifier.create(cache.execute("deposit", "key-1", "b", () -> call(Mono.just("again"))))
+                .expectErrorMatches(e -> e instanceof ResponseStatusException
+                        && ((ResponseStatusException) e).getStatus() == HttpStatus.UNPROCESSABLE_ENTITY)
+                .verify(Duration.ofSeconds(5));
+        assertEquals(1, calls.get());
+    }
+
+    private Mono<String> slowCall(String result) {
+        return call(Mono.delay(Duration.ofMillis(200)).thenReturn(result));
+    }
+
+    private <T> Mono<T> call(Mono<T> result) {
+        calls.incrementAndGet();
+        return result;
+    }
+}
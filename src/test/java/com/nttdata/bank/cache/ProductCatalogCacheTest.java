@@ -0,0 +1,122 @@
+package com.nttdata.bank.cache;
+
+import com.nttdata.bank.client.Product;
+import com.nttdata.bank.client.enums.ProductCategory;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+class ProductCatalogCacheTest {
+
+    private final Queue<Flux<Product>> responses = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger loads = new AtomicInteger();
+
+    @Test
+    void concurrentReadersShareOneLoad() {
+        ProductCatalogCache cache = cache(Duration.ofMinutes(5));
+        Sinks.Many<Product> products = Sinks.many().unicast().onBackpressureBuffer();
+        responses.add(products.asFlux());
+
+        List<CompletableFuture<Product>> reads = IntStream.range(0, 5)
+                .mapToObj(i -> cache.get(ProductCategory.CREDITO_PERSONAL).toFuture())
+                .collect(Collectors.toList());
+        assertFalse(reads.get(0).isDone());
+        products.tryEmitNext(product("product-3", ProductCategory.CREDITO_PERSONAL));
+        products.tryEmitComplete();
+
+        reads.forEach(read -> assertEquals("product-3", read.orTimeout(5, TimeUnit.SECONDS).join().getId()));
+        assertEquals(1, loads.get());
+
+        // Later reads are served from the snapshot
+        assertEquals(1, cache.all().count().block(Duration.ofSeconds(5)));
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    void loadStartedBeforeAnInvalidateIsNotKept() {
+        ProductCatalogCache cache = cache(Duration.ofMinutes(5));
+        Sinks.Many<Product> before = Sinks.many().unicast().onBackpressureBuffer();
+        responses.add(before.asFlux());
+        responses.add(Flux.just(product("product-new", ProductCategory.CREDITO_PERSONAL)));
+
+        CompletableFuture<Product> read = cache.get(ProductCategory.CREDITO_PERSONAL).toFuture();
+        cache.invalidate();
+        before.tryEmitNext(product("product-old", ProductCategory.CREDITO_PERSONAL));
+        before.tryEmitComplete();
+
+        // The reader that started the load still gets its result, but the snapshot is not replaced by it
+        assertEquals("product-old", read.orTimeout(5, TimeUnit.SECONDS).join().getId());
+        assertEquals("product-new", cache.get(ProductCategory.CREDITO_PERSONAL).block(Duration.ofSeconds(5)).getId());
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    void failedLoadFallsBackToTheLastLoadedCatalog() {
+        // Every read is past the ttl, so every read loads
+        ProductCatalogCache cache = cache(Duration.ZERO);
+        responses.add(Flux.error(new IllegalStateException("products unavailable")));
+        responses.add(Flux.just(product("product-0", ProductCategory.CUENTA_BANCARIA_AHORRO)));
+        responses.add(Flux.error(new IllegalStateException("products unavailable")));
+
+        // Nothing loaded yet, so there is nothing to fall back on
+        StepVerifier.create(cache.all())
+                .expectError(IllegalStateException.class)
+                .verify(Duration.ofSeconds(5));
+
+        assertEquals("product-0", cache.get(ProductCategory.CUENTA_BANCARIA_AHORRO).block(Duration.ofSeconds(5)).getId());
+        assertEquals("product-0", cache.get(ProductCategory.CUENTA_BANCARIA_AHORRO).block(Duration.ofSeconds(5)).getId());
+        assertEquals(3, loads.get());
+    }
+
+    @Test
+    void staleSnapshotIsServedWhileItIsReloadedInTheBackground() {
+        ProductCatalogCache cache = new ProductCatalogCache(this::nextResponse, Duration.ofMinutes(5), Duration.ZERO);
+        responses.add(Flux.just(product("product-0", ProductCategory.CUENTA_BANCARIA_AHORRO)));
+        Sinks.Many<Product> reload = Sinks.many().unicast().onBackpressureBuffer();
+        responses.add(reload.asFlux());
+
+        cache.refresh().block(Duration.ofSeconds(5));
+        assertEquals("product-0", cache.get(ProductCategory.CUENTA_BANCARIA_AHORRO).block(Duration.ofSeconds(5)).getId());
+        assertEquals(2, loads.get());
+
+        reload.tryEmitNext(product("product-1", ProductCategory.CUENTA_BANCARIA_AHORRO));
+        reload.tryEmitComplete();
+        assertEquals("product-1", cache.get(ProductCategory.CUENTA_BANCARIA_AHORRO)
+                .map(Product::getId)
+                .filter("product-1"::equals)
+                .repeatWhenEmpty(5, attempts -> attempts.delayElements(Duration.ofMillis(10)))
+                .block(Duration.ofSeconds(5)));
+    }
+
+    private ProductCatalogCache cache(Duration ttl) {
+        return new ProductCatalogCache(this::nextResponse, ttl, ttl);
+    }
+
+    private Flux<Product> nextResponse() {
+        loads.incrementAndGet();
+        Flux<Product> response = responses.poll();
+        return response != null ? response : Flux.error(new IllegalStateException("no response queued"));
+    }
+
+    private static Product product(String id, ProductCategory category) {
+        Product product = new Product();
+        product.setId(id);
+        product.setProductCategory(category);
+        return product;
+    }
+}
@@ -0,0 +1,92 @@
+package com.nttdata.bank.cache;
+
+import com.nttdata.bank.client.Transaction;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Sinks;
+
+import java.time.Instant;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RecentTransactionsTest {
+
+    @Test
+    void keepsTheNewestTransactionsOfEachPurchaseOnce() {
+        RecentTransactions recent = new RecentTransactions(3);
+        for (int day = 1; day <= 5; day++) {
+            recent.put(transaction("t" + day, "purchase-0-0", day));
+        }
+        recent.put(transaction("t4", "purchase-0-0", 4));
+        recent.put(transaction("other", "purchase-0-1", 1));
+        // Moved back in time; older transactions already dropped do not come back
+        recent.put(transaction("t5", "purchase-0-0", 0));
+
+        Map<String, List<Transaction>> byPurchase = recent.recent("customer-0", 10);
+
+        assertEquals(List.of("t4", "t3", "t5"), ids(byPurchase.get("purchase-0-0")));
+        assertEquals(List.of("other"), ids(byPurchase.get("purchase-0-1")));
+        assertEquals(List.of("t4"), ids(recent.recent("customer-0", 1).get("purchase-0-0")));
+        assertTrue(recent.recent("customer-1", 10).isEmpty());
+    }
+
+    @Test
+    void loadKeepsWhatWasWrittenWhileItRan() {
+        RecentTransactions recent = new RecentTransactions(5);
+        Sinks.Many<Transaction> log = Sinks.many().unicast().onBackpressureBuffer();
+        recent.load(log.asFlux()).subscribe();
+
+        log.tryEmitNext(transaction("t1", "purchase-0-0", 1));
+        recent.put(transaction("t2", "purchase-0-0", 7));
+        recent.remove("t3");
+        log.tryEmitNext(transaction("t2", "purchase-0-0", 2));
+        log.tryEmitNext(transaction("t3", "purchase-0-0", 3));
+        assertFalse(recent.isLoaded());
+        log.tryEmitComplete();
+
+        assertTrue(recent.isLoaded());
+        List<Transaction> transactions = recent.recent("customer-0", 5).get("purchase-0-0");
+        assertEquals(List.of("t2", "t1"), ids(transactions));
+        assertEquals(Date.from(Instant.parse("2022-08-07T00:00:00Z")), transactions.get(0).getEmittedAt());
+    }
+
+    @Test
+    void laterLoadsReplaceTheIndexWithTheLog() {
+        RecentTransactions recent = new RecentTransactions(2);
+        recent.load(Flux.just(transaction("t1", "purchase-0-0", 1), transaction("t2", "purchase-0-0", 2))).block();
+        recent.put(transaction("t3", "purchase-0-0", 3));
+        assertEquals(List.of("t3", "t2"), ids(recent.recent("customer-0", 5).get("purchase-0-0")));
+
+        // t3 was deleted elsewhere and t4 written elsewhere; t1 comes back into the newest two
+        Sinks.Many<Transaction> log = Sinks.many().unicast().onBackpressureBuffer();
+        recent.load(log.asFlux()).subscribe();
+        // Skipped while the first load is running
+        recent.load(Flux.just(transaction("t9", "purchase-0-0", 9))).block();
+        log.tryEmitNext(transaction("t1", "purchase-0-0", 1));
+        log.tryEmitNext(transaction("t2", "purchase-0-0", 2));
+        log.tryEmitNext(transaction("t4", "purchase-0-1", 4));
+        log.tryEmitComplete();
+
+        assertEquals(List.of("t2", "t1"), ids(recent.recent("customer-0", 5).get("purchase-0-0")));
+        assertEquals(List.of("t4"), ids(recent.recent("customer-0", 5).get("purchase-0-1")));
+    }
+
+    private static Transaction transaction(String id, String purchaseId, int day) {
+        Transaction transaction = new Transaction();
+        transaction.setId(id);
+        transaction.setCustomerId("customer-0");
+        transaction.setPurchaseId(purchaseId);
+        transaction.setEmittedAt(Date.from(Instant.parse("2022-08-01T00:00:00Z").plusSeconds((day - 1) * 86_400L)));
+        return transaction;
+    }
+
+    private static List<String> ids(List<Transaction> transactions) {
+        return transactions.stream().map(Transaction::getId).collect(Collectors.toList());
+    }
+}
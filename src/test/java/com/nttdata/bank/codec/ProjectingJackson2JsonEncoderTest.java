@@ -0,0 +1,119 @@
+package com.nttdata.bank.codec;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.nttdata.bank.client.Purchase;
+import com.nttdata.bank.config.JsonConfig;
+import com.nttdata.bank.dto.Page;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RestController;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ProjectingJackson2JsonEncoderTest {
+
+    private WebTestClient client;
+
+    @BeforeEach
+    void setUp() {
+        Jackson2ObjectMapperBuilder builder = Jackson2ObjectMapperBuilder.json();
+        JsonConfig.projectionCustomizer().customize(builder);
+        ObjectMapper objectMapper = builder.build();
+        client = WebTestClient.bindToController(new PurchaseController())
+                .httpMessageCodecs(configurer -> configurer.defaultCodecs()
+                        .jackson2JsonEncoder(new ProjectingJackson2JsonEncoder(objectMapper)))
+                .build();
+    }
+
+    @Test
+    void withoutFieldsEverythingIsWritten() {
+        client.get().uri("/purchase").exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$.id").isEqualTo("purchase-0-0")
+                .jsonPath("$.customerId").isEqualTo("customer-0")
+                .jsonPath("$.balance").isEqualTo(1000.0);
+    }
+
+    @Test
+    void fieldsProjectASingleValue() {
+        client.get().uri("/purchase?fields=id,balance").exchange()
+                .expectStatus().isOk()
+                .expectBody(String.class).isEqualTo("{\"id\":\"purchase-0-0\",\"balance\":1000.0}");
+    }
+
+    @Test
+    void fieldsProjectTheItemsOfAWrapper() {
+        client.get().uri("/page?fields=id&fields= balance ,").exchange()
+                .expectStatus().isOk()
+                .expectBody(String.class).isEqualTo("{\"items\":[{\"id\":\"purchase-0-0\",\"balance\":1000.0},"
+                        + "{\"id\":\"purchase-0-1\",\"balance\":50.0}],\"nextCursor\":\"next\"}");
+    }
+
+    @Test
+    void fieldsProjectJsonArraysAndNdjsonStreams() {
+        client.get().uri("/purchases?fields=customerId").accept(MediaType.APPLICATION_JSON).exchange()
+                .expectStatus().isOk()
+                .expectBody(String.class).isEqualTo("[{\"customerId\":\"customer-0\"},{\"customerId\":\"customer-0\"}]");
+
+        client.get().uri("/purchases?fields=id").accept(MediaType.APPLICATION_NDJSON).exchange()
+                .expectStatus().isOk()
+                .expectBody(String.class).isEqualTo("{\"id\":\"purchase-0-0\"}\n{\"id\":\"purchase-0-1\"}\n");
+
+        client.get().uri("/purchases").accept(MediaType.APPLICATION_NDJSON).exchange()
+                .expectStatus().isOk()
+                .expectBody(String.class).value(body -> {
+                    String[] lines = body.split("\n");
+                    assertEquals(2, lines.length);
+                    assertTrue(lines[1].startsWith("{\"id\":\"purchase-0-1\",\"customerId\":\"customer-0\","));
+                    assertTrue(lines[1].contains("\"balance\":50.0"));
+                });
+    }
+
+    @Test
+    void unknownFieldsAreIgnored() {
+        client.get().uri("/purchase?fields=id,nope").exchange()
+                .expectStatus().isOk()
+                .expectBody(String.class).isEqualTo("{\"id\":\"purchase-0-0\"}");
+
+        client.get().uri("/purchase?fields=nope").exchange()
+                .expectStatus().isOk()
+                .expectBody(String.class).isEqualTo("{}");
+    }
+
+    private static Purchase newPurchase(String id, double balance) {
+        Purchase purchase = new Purchase();
+        purchase.setId(id);
+        purchase.setCustomerId("customer-0");
+        purchase.setBalance(balance);
+        return purchase;
+    }
+
+    @RestController
+    static class PurchaseController {
+
+        @GetMapping("/purchase")
+        Mono<Purchase> purchase() {
+            return Mono.just(newPurchase("purchase-0-0", 1000.0));
+        }
+
+        @GetMapping(value = "/purchases", produces = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_NDJSON_VALUE})
+        Flux<Purchase> purchases() {
+            return Flux.just(newPurchase("purchase-0-0", 1000.0), newPurchase("purchase-0-1", 50.0));
+        }
+
+        @GetMapping("/page")
+        Mono<Page<Purchase>> page() {
+            return Mono.just(new Page<>(List.of(newPurchase("purchase-0-0", 1000.0), newPurchase("purchase-0-1", 50.0)), "next"));
+        }
+    }
+}
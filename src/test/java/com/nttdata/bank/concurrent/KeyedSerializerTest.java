@@ -0,0 +1,89 @@
+package com.nttdata.bank.concurrent;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class KeyedSerializerTest {
+
+    private final KeyedSerializer serializer = new KeyedSerializer("test.serialized", new SimpleMeterRegistry());
+
+    @Test
+    void operationsOnTheSameKeyDoNotOverlapAndKeepTheirOrder() {
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+
+        List<Integer> completed = Flux.range(0, 20)
+                .flatMap(i -> serializer.serialize("purchase-0", () -> Mono.fromCallable(() -> {
+                            maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                            return i;
+                        })
+                        .delayElement(Duration.ofMillis(5))
+                        .doFinally(signal -> running.decrementAndGet())))
+                .collectList()
+                .block(Duration.ofSeconds(5));
+
+        assertEquals(1, maxRunning.get());
+        assertEquals(IntStream.range(0, 20).boxed().collect(Collectors.toList()), completed);
+    }
+
+    @Test
+    void differentKeysRunInParallel() {
+        long start = System.nanoTime();
+        Flux.range(0, 20)
+                .flatMap(i -> serializer.serialize("purchase-" + i, () -> Mono.delay(Duration.ofMillis(200))))
+                .blockLast(Duration.ofSeconds(5));
+
+        assertTrue(Duration.ofNanos(System.nanoTime() - start).compareTo(Duration.ofSeconds(2)) < 0);
+    }
+
+    @Test
+    void cancelledWaiterIsSkippedAndDoesNotLetTheNextOperationOvertake() {
+        List<String> events = new CopyOnWriteArrayList<>();
+
+        CompletableFuture<String> first = serializer.serialize("purchase-0", () -> step(events, "first", 200)).toFuture();
+        Disposable second = serializer.serialize("purchase-0", () -> step(events, "second", 0)).subscribe();
+        CompletableFuture<String> third = serializer.serialize("purchase-0", () -> step(events, "third", 0)).toFuture();
+        second.dispose();
+
+        CompletableFuture.allOf(first, third).orTimeout(5, TimeUnit.SECONDS).join();
+
+        assertEquals(List.of("first:start", "first:end", "third:start", "third:end"), events);
+    }
+
+    @Test
+    void cancelledRunningOperationKeepsTheKeyUntilItFinishes() {
+        List<String> events = new CopyOnWriteArrayList<>();
+
+        Disposable first = serializer.serialize("purchase-0", () -> step(events, "first", 200)).subscribe();
+        CompletableFuture<String> second = serializer.serialize("purchase-0", () -> step(events, "second", 0)).toFuture();
+        Mono.delay(Duration.ofMillis(50)).doOnNext(tick -> first.dispose()).subscribe();
+
+        second.orTimeout(5, TimeUnit.SECONDS).join();
+
+        assertEquals(List.of("first:start", "first:end", "second:start", "second:end"), events);
+    }
+
+    private static Mono<String> step(List<String> events, String name, long millis) {
+        return Mono.defer(() -> {
+            events.add(name + ":start");
+            return Mono.delay(Duration.ofMillis(millis))
+                    .doOnNext(tick -> events.add(name + ":end"))
+                    .thenReturn(name);
+        });
+    }
+}
@@ -0,0 +1,106 @@
+package com.nttdata.bank.downstream;
+
+import com.nttdata.bank.client.Product;
+import com.nttdata.bank.client.Transaction;
+import com.nttdata.bank.config.ResilienceProperties;
+import com.nttdata.bank.support.StubBackend;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.server.ResponseStatusException;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class DownstreamGuardFilterTest {
+
+    private StubBackend backend;
+    private WebClient webClient;
+
+    @BeforeEach
+    void setUp() {
+        backend = new StubBackend(5, 1, 1).start();
+
+        ResilienceProperties properties = new ResilienceProperties();
+        properties.getBulkhead().getResources().put("transactions", 2);
+        properties.getCircuitBreaker().setMinimumNumberOfCalls(4);
+        properties.getCircuitBreaker().setSlidingWindowSize(4);
+        properties.getCircuitBreaker().setWaitDurationInOpenState(Duration.ofMinutes(1));
+
+        webClient = WebClient.builder()
+                .baseUrl(backend.baseUrl())
+                .filter(new DownstreamGuardFilter(properties))
+                .build();
+    }
+
+    @AfterEach
+    void tearDown() {
+        backend.close();
+    }
+
+    @Test
+    void slowResourceFillsOnlyItsOwnBulkhead() {
+        backend.latency("transactions", Duration.ofSeconds(1));
+
+        Flux<List<Transaction>> slowCalls = Flux.range(0, 2)
+                .flatMap(i -> webClient.get().uri("/transactions").retrieve().bodyToFlux(Transaction.class).collectList());
+        Mono<Void> rejected = Mono.delay(Duration.ofMillis(200))
+                .then(webClient.get().uri("/transactions").retrieve().bodyToMono(Transaction.class))
+                .then();
+        Mono<Product> unaffected = Mono.delay(Duration.ofMillis(200))
+                .then(webClient.get().uri("/products/CREDITO_PERSONAL").retrieve().bodyToMono(Product.class));
+
+        slowCalls.subscribe();
+
+        StepVerifier.create(rejected)
+                .expectErrorMatches(e -> e instanceof ResponseStatusException
+                        && ((ResponseStatusException) e).getStatus() == HttpStatus.SERVICE_UNAVAILABLE)
+                .verify(Duration.ofMillis(800));
+        StepVerifier.create(unaffected)
+                .expectNextMatches(product -> "product-3".equals(product.getId()))
+                .expectComplete()
+                .verify(Duration.ofMillis(800));
+    }
+
+    @Test
+    void openCircuitFailsFastWithoutCallingBackend() {
+        backend.failWith("customers", 500);
+
+        Flux.range(0, 4)
+                .concatMap(i -> webClient.get().uri("/customers/just/customer-0").retrieve().bodyToMono(String.class)
+                        .onErrorResume(e -> Mono.empty()))
+                .blockLast(Duration.ofSeconds(5));
+        assertEquals(4, backend.requestCount("customers"));
+
+        StepVerifier.create(webClient.get().uri("/customers/just/customer-0").retrieve().bodyToMono(String.class))
+                .expectErrorMatches(e -> e instanceof ResponseStatusException
+                        && ((ResponseStatusException) e).getStatus() == HttpStatus.SERVICE_UNAVAILABLE)
+                .verify(Duration.ofSeconds(1));
+        assertEquals(4, backend.requestCount("customers"));
+
+        StepVerifier.create(webClient.get().uri("/products").retrieve().bodyToFlux(Product.class).count())
+                .expectNext(6L)
+                .expectComplete()
+                .verify(Duration.ofSeconds(5));
+    }
+
+    @Test
+    void clientErrorsDoNotOpenCircuit() {
+        Flux.range(0, 6)
+                .concatMap(i -> webClient.get().uri("/purchases/missing").retrieve().bodyToMono(String.class)
+                        .onErrorResume(e -> Mono.empty()))
+                .blockLast(Duration.ofSeconds(5));
+
+        StepVerifier.create(webClient.get().uri("/purchases/purchase-0-0").retrieve().bodyToMono(String.class))
+                .expectNextCount(1)
+                .expectComplete()
+                .verify(Duration.ofSeconds(5));
+    }
+}
@@ -0,0 +1,67 @@
+package com.nttdata.bank.downstream;
+
+import com.nttdata.bank.config.DownstreamProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class HedgedReadsTest {
+
+    private static final String ROUTE = "/customers/{docNumber}";
+
+    @Test
+    void slowFirstAttemptIsOvertakenByTheSecond() throws InterruptedException {
+        HedgedReads hedgedReads = new HedgedReads(hedging(1.0), new SimpleMeterRegistry());
+        warmUp(hedgedReads);
+
+        AtomicInteger attempts = new AtomicInteger();
+        String result = hedgedReads.mono(ROUTE, () -> attempts.incrementAndGet() == 1 ?
+                        Mono.delay(Duration.ofSeconds(5)).thenReturn("first") :
+                        Mono.just("second"))
+                .block(Duration.ofSeconds(2));
+
+        assertEquals("second", result);
+        assertEquals(2, attempts.get());
+    }
+
+    @Test
+    void noSecondAttemptWithoutBudget() throws InterruptedException {
+        HedgedReads hedgedReads = new HedgedReads(hedging(0), new SimpleMeterRegistry());
+        warmUp(hedgedReads);
+
+        AtomicInteger attempts = new AtomicInteger();
+        String result = hedgedReads.mono(ROUTE, () -> {
+                    attempts.incrementAndGet();
+                    return Mono.delay(Duration.ofMillis(300)).thenReturn("first");
+                })
+                .block(Duration.ofSeconds(2));
+
+        assertEquals("first", result);
+        assertEquals(1, attempts.get());
+    }
+
+    private static DownstreamProperties.Hedging hedging(double budgetRatio) {
+        DownstreamProperties.Hedging hedging = new DownstreamProperties.Hedging();
+        hedging.setEnabled(true);
+        hedging.getRoutes().put(ROUTE, 95.0);
+        hedging.setMinDelay(Duration.ofMillis(20));
+        hedging.setWindow(Duration.ofMillis(100));
+        hedging.setMinSamples(10);
+        hedging.setBudgetRatio(budgetRatio);
+        return hedging;
+    }
+
+    // Fast answers for one window, so the next call computes a delay at the minimum
+    private static void warmUp(HedgedReads hedgedReads) throws InterruptedException {
+        Flux.range(0, 20)
+                .concatMap(i -> hedgedReads.mono(ROUTE, () -> Mono.just(i)))
+                .blockLast(Duration.ofSeconds(1));
+        Thread.sleep(150);
+    }
+}
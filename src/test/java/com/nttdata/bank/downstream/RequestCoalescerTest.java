@@ -0,0 +1,126 @@
+package com.nttdata.bank.downstream;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class RequestCoalescerTest {
+
+    private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final RequestCoalescer coalescer = new RequestCoalescer(meterRegistry);
+    private final AtomicInteger calls = new AtomicInteger();
+
+    @Test
+    void concurrentSubscribersShareOneCall() {
+        Sinks.One<String> response = Sinks.one();
+
+        List<CompletableFuture<String>> reads = IntStream.range(0, 5)
+                .mapToObj(i -> coalescer.mono("customers", "10000000", () -> counted(response.asMono())).toFuture())
+                .collect(Collectors.toList());
+        response.tryEmitValue("customer-0");
+
+        reads.forEach(read -> assertEquals("customer-0", read.orTimeout(5, TimeUnit.SECONDS).join()));
+        assertEquals(1, calls.get());
+        assertEquals(4, coalesced("customers"));
+    }
+
+    @Test
+    void keyIsForgottenOnceTheCallCompletes() {
+        assertEquals("first", coalescer.mono("customers", "10000000", () -> counted(Mono.just("first")))
+                .block(Duration.ofSeconds(5)));
+        assertEquals("second", coalescer.mono("customers", "10000000", () -> counted(Mono.just("second")))
+                .block(Duration.ofSeconds(5)));
+
+        assertEquals(2, calls.get());
+        assertEquals(0, coalesced("customers"));
+    }
+
+    @Test
+    void errorsReachEverySubscriberAndAreNotKept() {
+        Sinks.One<String> response = Sinks.one();
+        Mono<String> first = coalescer.mono("customers", "10000000", () -> counted(response.asMono()));
+        Mono<String> second = coalescer.mono("customers", "10000000", () -> counted(response.asMono()));
+        CompletableFuture<String> firstRead = first.toFuture();
+        CompletableFuture<String> secondRead = second.toFuture();
+        response.tryEmitError(new IllegalStateException("customers unavailable"));
+
+        StepVerifier.create(Mono.fromFuture(firstRead)).expectError(IllegalStateException.class).verify(Duration.ofSeconds(5));
+        StepVerifier.create(Mono.fromFuture(secondRead)).expectError(IllegalStateException.class).verify(Duration.ofSeconds(5));
+        assertEquals("retried", coalescer.mono("customers", "10000000", () -> counted(Mono.just("retried")))
+                .block(Duration.ofSeconds(5)));
+        assertEquals(2, calls.get());
+    }
+
+    @Test
+    void fluxSubscribersShareEveryElement() {
+        Sinks.Many<String> response = Sinks.many().replay().all();
+
+        List<CompletableFuture<List<String>>> reads = IntStream.range(0, 3)
+                .mapToObj(i -> coalescer.flux("purchases", "customer-0", () -> counted(response.asFlux()))
+                        .collectList()
+                        .toFuture())
+                .collect(Collectors.toList());
+        response.tryEmitNext("purchase-0-0");
+        response.tryEmitNext("purchase-0-1");
+        response.tryEmitComplete();
+
+        reads.forEach(read -> assertEquals(List.of("purchase-0-0", "purchase-0-1"),
+                read.orTimeout(5, TimeUnit.SECONDS).join()));
+        assertEquals(1, calls.get());
+        assertEquals(2, coalesced("purchases"));
+
+        // Joining a different key is a call of its own
+        coalescer.flux("purchases", "customer-1", () -> counted(Flux.just("purchase-1-0"))).blockLast(Duration.ofSeconds(5));
+        assertEquals(2, calls.get());
+    }
+
+    @Test
+    void callStartedAfterAnotherFinishedIsJoinedUntilItCompletes() {
+        Sinks.One<String> second = Sinks.one();
+        coalescer.mono("customers", "10000000", () -> counted(Mono.just("first"))).block(Duration.ofSeconds(5));
+
+        // The first call's cleanup only removes its own entry, never the one that replaced it
+        CompletableFuture<String> secondRead = coalescer.mono("customers", "10000000", () -> counted(second.asMono()))
+                .toFuture();
+        CompletableFuture<String> thirdRead = coalescer.mono("customers", "10000000", () -> counted(Mono.just("third")))
+                .toFuture();
+        second.tryEmitValue("second");
+
+        assertEquals("second", secondRead.orTimeout(5, TimeUnit.SECONDS).join());
+        assertEquals("second", thirdRead.orTimeout(5, TimeUnit.SECONDS).join());
+        assertEquals(2, calls.get());
+        assertEquals(1, coalesced("customers"));
+    }
+
+    private <T> Mono<T> counted(Mono<T> call) {
+        calls.incrementAndGet();
+        return call;
+    }
+
+    private <T> Flux<T> counted(Flux<T> call) {
+        calls.incrementAndGet();
+        return call;
+    }
+
+    private double coalesced(String resource) {
+        Counter counter = meterRegistry.find("bank.downstream.coalesced")
+                .tag("resource", resource)
+                .counter();
+        return counter == null ? 0 : counter.count();
+    }
+}
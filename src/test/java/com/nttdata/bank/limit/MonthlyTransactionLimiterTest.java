@@ -0,0 +1,147 @@
+package com.nttdata.bank.limit;
+
+import com.nttdata.bank.client.Purchase;
+import com.nttdata.bank.client.Transaction;
+import org.junit.jupiter.api.Test;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.Date;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MonthlyTransactionLimiterTest {
+
+    @Test
+    void concurrentOperationsNeverExceedTheLimit() throws InterruptedException {
+        MonthlyTransactionLimiter limiter = new MonthlyTransactionLimiter(Clock.systemUTC());
+        Purchase purchase = limitedPurchase(20, 5);
+        AtomicInteger granted = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        for (int i = 0; i < 200; i++) {
+            executor.execute(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                if (limiter.tryAcquire(purchase) > 0) {
+                    granted.incrementAndGet();
+                }
+            });
+        }
+        start.countDown();
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+
+        assertEquals(15, granted.get());
+        assertEquals(MonthlyTransactionLimiter.REJECTED, limiter.tryAcquire(purchase));
+    }
+
+    @Test
+    void releasedSlotsAndNewMonthsAllowMoreOperations() {
+        MutableClock clock = new MutableClock(Instant.parse("2022-07-31T23:59:00Z"));
+        MonthlyTransactionLimiter limiter = new MonthlyTransactionLimiter(clock);
+        Purchase purchase = limitedPurchase(2, 0);
+
+        assertEquals(1, limiter.tryAcquire(purchase));
+        assertEquals(2, limiter.tryAcquire(purchase));
+        assertEquals(MonthlyTransactionLimiter.REJECTED, limiter.tryAcquire(purchase));
+        limiter.release(purchase.getId(), 2);
+        assertEquals(2, limiter.tryAcquire(purchase));
+
+        clock.instant = Instant.parse("2022-08-01T00:00:00Z");
+        assertEquals(1, limiter.tryAcquire(purchase));
+    }
+
+    @Test
+    void storedCountIsReplacedByTheScannedOperationsOfTheMonth() {
+        MutableClock clock = new MutableClock(Instant.parse("2022-08-10T00:00:00Z"));
+        MonthlyTransactionLimiter limiter = new MonthlyTransactionLimiter(clock);
+        // Counted in July, so it says nothing about August
+        Purchase purchase = limitedPurchase(3, 2);
+
+        assertEquals(3, limiter.tryAcquire(purchase));
+
+        MonthlyTransactionLimiter.Seed seed = limiter.seed();
+        seed.add(transaction("2022-07-20T10:00:00Z", "DEPOSIT"));
+        seed.add(transaction("2022-08-05T10:00:00Z", "WITHDRAWAL"));
+        seed.add(transaction("2022-08-06T10:00:00Z", "TRANSFER"));
+        // Emitted after the limiter was created, so already counted by it
+        seed.add(transaction("2022-08-10T00:00:01Z", "DEPOSIT"));
+        seed.apply();
+
+        assertEquals(3, limiter.tryAcquire(purchase));
+        assertEquals(MonthlyTransactionLimiter.REJECTED, limiter.tryAcquire(purchase));
+    }
+
+    @Test
+    void purchasesFirstSeenAfterTheScanStartFromIt() {
+        MonthlyTransactionLimiter limiter = new MonthlyTransactionLimiter(
+                new MutableClock(Instant.parse("2022-08-10T00:00:00Z")));
+        MonthlyTransactionLimiter.Seed seed = limiter.seed();
+        seed.add(transaction("2022-08-05T10:00:00Z", "DEPOSIT"));
+        seed.apply();
+
+        assertEquals(2, limiter.tryAcquire(limitedPurchase(3, 5)));
+    }
+
+    @Test
+    void purchasesWithoutLimitAreNotCounted() {
+        MonthlyTransactionLimiter limiter = new MonthlyTransactionLimiter(Clock.systemUTC());
+        Purchase purchase = limitedPurchase(1, 1);
+        purchase.setHasTransactionLimitPerMonth(false);
+
+        assertEquals(MonthlyTransactionLimiter.UNLIMITED, limiter.tryAcquire(purchase));
+    }
+
+    private static Purchase limitedPurchase(int limit, int madeThisMonth) {
+        Purchase purchase = new Purchase();
+        purchase.setId("purchase-0-0");
+        purchase.setHasTransactionLimitPerMonth(true);
+        purchase.setTransactionLimitPerMonthNumber(limit);
+        purchase.setTransactionsMadeByCustomerInCurrentMonth(madeThisMonth);
+        return purchase;
+    }
+
+    private static Transaction transaction(String emittedAt, String type) {
+        Transaction transaction = new Transaction();
+        transaction.setPurchaseId("purchase-0-0");
+        transaction.setTransactionType(type);
+        transaction.setEmittedAt(Date.from(Instant.parse(emittedAt)));
+        return transaction;
+    }
+
+    private static final class MutableClock extends Clock {
+
+        private Instant instant;
+
+        private MutableClock(Instant instant) {
+            this.instant = instant;
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return instant;
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package com.nttdata.bank.limit;
+
+import com.nttdata.bank.config.RateLimitProperties;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RestController;
+import reactor.core.publisher.Mono;
+
+class RateLimitFilterTest {
+
+    private RateLimitProperties properties;
+    private WebTestClient client;
+
+    @BeforeEach
+    void setUp() {
+        properties = new RateLimitProperties();
+        properties.setEnabled(true);
+        properties.setClientHeader("X-Client-Id");
+        client = WebTestClient.bindToController(new AnyRouteController())
+                .webFilter(new RateLimitFilter(properties))
+                .build();
+    }
+
+    @Test
+    void requestsOverTheLimitGet429WithRetryAfter() {
+        properties.getRoutes().put("/bank/operations/**", limit(1, 0.5));
+
+        get("/bank/operations/deposit", "a").expectStatus().isOk();
+        get("/bank/operations/deposit", "a")
+                .expectStatus().isEqualTo(HttpStatus.TOO_MANY_REQUESTS)
+                .expectHeader().valueEquals(HttpHeaders.RETRY_AFTER, "2");
+        // Other clients have their own buckets
+        get("/bank/operations/deposit", "b").expectStatus().isOk();
+    }
+
+    @Test
+    void theMostSpecificRouteApplies() {
+        properties.getRoutes().put("/bank/**", limit(100, 100));
+        properties.getRoutes().put("/bank/operations/balance/{purchaseId}", limit(1, 0.1));
+
+        get("/bank/operations/balance/purchase-0-0", "a").expectStatus().isOk();
+        get("/bank/operations/balance/purchase-0-0", "a").expectStatus().isEqualTo(HttpStatus.TOO_MANY_REQUESTS);
+        for (int i = 0; i < 5; i++) {
+            get("/bank/customers", "a").expectStatus().isOk();
+        }
+        // Matching no route is not limited
+        for (int i = 0; i < 5; i++) {
+            get("/actuator/health", "a").expectStatus().isOk();
+        }
+    }
+
+    @Test
+    void changedRoutesTakeEffectOnTheNextRequest() {
+        properties.getRoutes().put("/bank/**", limit(1, 0.1));
+        get("/bank/customers", "a").expectStatus().isOk();
+        get("/bank/customers", "a").expectStatus().isEqualTo(HttpStatus.TOO_MANY_REQUESTS);
+
+        // As when the config server rebinds the properties
+        properties.getRoutes().put("/bank/**", limit(3, 0.1));
+        for (int i = 0; i < 3; i++) {
+            get("/bank/customers", "a").expectStatus().isOk();
+        }
+        get("/bank/customers", "a").expectStatus().isEqualTo(HttpStatus.TOO_MANY_REQUESTS);
+
+        properties.setEnabled(false);
+        get("/bank/customers", "a").expectStatus().isOk();
+    }
+
+    private WebTestClient.ResponseSpec get(String path, String clientId) {
+        return client.get().uri(path).header("X-Client-Id", clientId).exchange();
+    }
+
+    private static RateLimitProperties.Limit limit(int capacity, double refillPerSecond) {
+        RateLimitProperties.Limit limit = new RateLimitProperties.Limit();
+        limit.setCapacity(capacity);
+        limit.setRefillPerSecond(refillPerSecond);
+        return limit;
+    }
+
+    @RestController
+    static class AnyRouteController {
+
+        @GetMapping("/**")
+        Mono<String> any() {
+            return Mono.just("ok");
+        }
+    }
+}
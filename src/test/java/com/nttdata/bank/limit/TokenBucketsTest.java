@@ -0,0 +1,67 @@
+package com.nttdata.bank.limit;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TokenBucketsTest {
+
+    private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    @Test
+    void burstUpToCapacityThenRefillAtTheConfiguredRate() {
+        TokenBuckets buckets = new TokenBuckets(5, 10, 100, Duration.ofMinutes(1));
+        long now = 1_000 * SECOND;
+
+        for (int i = 0; i < 5; i++) {
+            assertEquals(0, buckets.tryAcquire("client", now));
+        }
+        long wait = buckets.tryAcquire("client", now);
+        assertEquals(SECOND / 10, wait);
+
+        assertEquals(0, buckets.tryAcquire("client", now + wait));
+        assertTrue(buckets.tryAcquire("client", now + wait) > 0);
+        assertEquals(0, buckets.tryAcquire("other-client", now));
+
+        // A full second refills ten tokens but the bucket holds only five
+        long later = now + wait + SECOND;
+        for (int i = 0; i < 5; i++) {
+            assertEquals(0, buckets.tryAcquire("client", later));
+        }
+        assertTrue(buckets.tryAcquire("client", later) > 0);
+    }
+
+    @Test
+    void concurrentRequestsNeverTakeMoreThanTheCapacity() throws InterruptedException {
+        TokenBuckets buckets = new TokenBuckets(50, 1, 100, Duration.ofMinutes(1));
+        long now = System.nanoTime();
+        AtomicInteger granted = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        for (int i = 0; i < 500; i++) {
+            executor.execute(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                if (buckets.tryAcquire("client", now) == 0) {
+                    granted.incrementAndGet();
+                }
+            });
+        }
+        start.countDown();
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+
+        assertEquals(50, granted.get());
+    }
+}
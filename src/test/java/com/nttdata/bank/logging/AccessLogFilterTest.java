@@ -0,0 +1,115 @@
+package com.nttdata.bank.logging;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.read.ListAppender;
+import com.nttdata.bank.config.AccessLogProperties;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpStatus;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AccessLogFilterTest {
+
+    private final Logger accessLog = (Logger) LoggerFactory.getLogger("bank.access");
+    private final ListAppender<ILoggingEvent> lines = new ListAppender<>();
+    private AccessLogProperties properties;
+    private WebTestClient client;
+
+    @BeforeEach
+    void setUp() {
+        accessLog.setLevel(Level.INFO);
+        lines.start();
+        accessLog.addAppender(lines);
+        properties = new AccessLogProperties();
+        properties.setSlowThreshold(Duration.ofMillis(200));
+        properties.getRoutes().put("/bank/quiet", 0.0);
+        properties.getRoutes().put("/bank/quiet/{outcome}", 0.0);
+        client = WebTestClient.bindToController(new RoutesController())
+                .webFilter(new AccessLogFilter(properties))
+                .build();
+    }
+
+    @AfterEach
+    void tearDown() {
+        accessLog.detachAppender(lines);
+    }
+
+    @Test
+    void sampledRoutesAreLoggedWithTheirCompletionFields() {
+        client.get().uri("/bank/loud/7").exchange().expectStatus().isOk();
+
+        List<String> logged = logged();
+        assertEquals(1, logged.size());
+        String line = logged.get(0);
+        assertTrue(line.startsWith("method=GET route=/bank/loud/{id} path=/bank/loud/7 status=200 duration_ms="), line);
+        assertTrue(line.matches(".* duration_ms=\\d+ request_id=\\S+"), line);
+    }
+
+    @Test
+    void unsampledRoutesAreLoggedOnlyWhenFailingOrSlow() {
+        for (int i = 0; i < 10; i++) {
+            client.get().uri("/bank/quiet").exchange().expectStatus().isOk();
+        }
+        assertTrue(logged().isEmpty());
+
+        client.get().uri("/bank/quiet/fail").exchange().expectStatus().isEqualTo(HttpStatus.SERVICE_UNAVAILABLE);
+        client.get().uri("/bank/quiet/slow").exchange().expectStatus().isOk();
+
+        List<String> logged = logged();
+        assertEquals(2, logged.size());
+        assertTrue(logged.get(0).contains("route=/bank/quiet/{outcome} path=/bank/quiet/fail status=503"), logged.get(0));
+        assertTrue(logged.get(0).endsWith("error=ResponseStatusException"), logged.get(0));
+        assertTrue(logged.get(1).contains("path=/bank/quiet/slow status=200"), logged.get(1));
+    }
+
+    @Test
+    void nothingIsLoggedWhenDisabled() {
+        properties.setEnabled(false);
+
+        client.get().uri("/bank/quiet/fail").exchange().expectStatus().isEqualTo(HttpStatus.SERVICE_UNAVAILABLE);
+
+        assertTrue(logged().isEmpty());
+    }
+
+    private List<String> logged() {
+        return lines.list.stream().map(ILoggingEvent::getFormattedMessage).collect(Collectors.toList());
+    }
+
+    @RestController
+    static class RoutesController {
+
+        @GetMapping("/bank/loud/{id}")
+        Mono<String> loud(@PathVariable String id) {
+            return Mono.just(id);
+        }
+
+        @GetMapping("/bank/quiet")
+        Mono<String> quiet() {
+            return Mono.just("ok");
+        }
+
+        @GetMapping("/bank/quiet/{outcome}")
+        Mono<String> quietOutcome(@PathVariable String outcome) {
+            if ("fail".equals(outcome)) {
+                return Mono.error(new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE));
+            }
+            return Mono.delay(Duration.ofMillis(300)).thenReturn(outcome);
+        }
+    }
+}
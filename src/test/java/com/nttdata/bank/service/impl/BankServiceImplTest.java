@@ -0,0 +1,466 @@
+package com.nttdata.bank.service.impl;
+
+import com.nttdata.bank.cache.BalanceView;
+import com.nttdata.bank.client.Purchase;
+import com.nttdata.bank.client.Transaction;
+import com.nttdata.bank.config.BatchProperties;
+import com.nttdata.bank.config.CacheProperties;
+import com.nttdata.bank.config.DownstreamProperties;
+import com.nttdata.bank.config.PortfolioProperties;
+import com.nttdata.bank.config.ReportProperties;
+import com.nttdata.bank.config.ResilienceProperties;
+import com.nttdata.bank.config.WebClientConfig;
+import com.nttdata.bank.controller.BankController;
+import com.nttdata.bank.dto.Balance;
+import com.nttdata.bank.dto.BatchResult;
+import com.nttdata.bank.dto.Page;
+import com.nttdata.bank.support.StubBackend;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import org.springframework.web.server.ResponseStatusException;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.netty.resources.ConnectionProvider;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BankServiceImplTest {
+
+    private StubBackend backend;
+    private ConnectionProvider connectionProvider;
+    private BankServiceImpl bankService;
+
+    @BeforeEach
+    void setUp() {
+        backend = new StubBackend(2, 1, 1).start();
+
+        DownstreamProperties downstreamProperties = new DownstreamProperties();
+        downstreamProperties.setBaseUrl(backend.baseUrl());
+        MeterRegistry meterRegistry = new SimpleMeterRegistry();
+        ResilienceProperties resilienceProperties = new ResilienceProperties();
+        resilienceProperties.getCircuitBreaker().setMinimumNumberOfCalls(2);
+        resilienceProperties.getCircuitBreaker().setSlidingWindowSize(2);
+        resilienceProperties.getCircuitBreaker().setWaitDurationInOpenState(Duration.ofMinutes(1));
+        // Customers are read from downstream on every call rather than served from the cache
+        CacheProperties cacheProperties = new CacheProperties();
+        cacheProperties.getCustomers().setTtl(Duration.ofNanos(1));
+
+        WebClientConfig config = new WebClientConfig();
+        connectionProvider = config.downstreamConnectionProvider(downstreamProperties);
+        WebClient webClient = config.downstreamWebClient(WebClient.builder(), connectionProvider,
+                config.downstreamGuardFilter(resilienceProperties, meterRegistry), downstreamProperties,
+                meterRegistry);
+        bankService = new BankServiceImpl(webClient, cacheProperties, new BatchProperties(),
+                new PortfolioProperties(), new ReportProperties(), new DownstreamProperties(),
+                Jackson2ObjectMapperBuilder.json().build(), meterRegistry);
+    }
+
+    @AfterEach
+    void tearDown() {
+        connectionProvider.dispose();
+        backend.close();
+    }
+
+    @Test
+    void depositWritesTheNewBalanceAndOneTransaction() {
+        StepVerifier.create(bankService.deposit("customer-0", "purchase-0-0", 250))
+                .expectNextMatches(transaction -> "DEPOSIT".equals(transaction.getTransactionType())
+                        && transaction.getAmount() == 250
+                        && "customer-0".equals(transaction.getCustomerId())
+                        && "purchase-0-0".equals(transaction.getPurchaseId()))
+                .expectComplete()
+                .verify(Duration.ofSeconds(5));
+
+        assertEquals(1, backend.requestCount("transactions"));
+        assertEquals(1250.0, balanceOf("purchase-0-0"));
+    }
+
+    @Test
+    void withdrawTakesTheAmountFromTheBalance() {
+        StepVerifier.create(bankService.withdraw("customer-0", "purchase-0-0", 400))
+                .expectNextMatches(transaction -> "WITHDRAWAL".equals(transaction.getTransactionType())
+                        && transaction.getAmount() == 400)
+                .expectComplete()
+                .verify(Duration.ofSeconds(5));
+
+        assertEquals(1, backend.requestCount("transactions"));
+        assertEquals(600.0, balanceOf("purchase-0-0"));
+    }
+
+    @Test
+    void withdrawBeyondTheBalanceIsRejectedWithoutWriting() {
+        expectStatus(bankService.withdraw("customer-0", "purchase-0-0", 1500), HttpStatus.BAD_REQUEST);
+
+        assertEquals(0, backend.requestCount("transactions"));
+        assertEquals(1000.0, balanceOf("purchase-0-0"));
+    }
+
+    @Test
+    void withdrawFromACreditIsAllowedUpToItsLimit() {
+        Purchase credit = new Purchase();
+        credit.setId("purchase-0-credit");
+        credit.setCustomerId("customer-0");
+        credit.setProductId("product-3");
+        credit.setProductType("ACTIVE");
+        credit.setProductCategory("CREDITO_PERSONAL");
+        credit.setCreditLimitAmount(500.0);
+        backend.addPurchase(credit);
+
+        StepVerifier.create(bankService.withdraw("customer-0", "purchase-0-credit", 300))
+                .expectNextMatches(transaction -> "WITHDRAWAL".equals(transaction.getTransactionType()))
+                .expectComplete()
+                .verify(Duration.ofSeconds(5));
+        assertEquals(-300.0, balanceOf("purchase-0-credit"));
+
+        // The stub does not keep writes, so the credit is read back unused: 600 is beyond its limit
+        expectStatus(bankService.withdraw("customer-0", "purchase-0-credit", 600), HttpStatus.BAD_REQUEST);
+        assertEquals(1, backend.requestCount("transactions"));
+    }
+
+    @Test
+    void failedTransactionLeavesTheBalanceUntouched() {
+        backend.failWith("transactions", 500);
+
+        StepVerifier.create(bankService.deposit("customer-0", "purchase-0-0", 250))
+                .expectError(WebClientResponseException.InternalServerError.class)
+                .verify(Duration.ofSeconds(5));
+
+        // Only the purchase read reached the purchases service
+        assertEquals(1, backend.requestCount("purchases"));
+        assertEquals(1000.0, balanceOf("purchase-0-0"));
+    }
+
+    @Test
+    void failedPurchaseDeleteKeepsTheMonthlyCount() {
+        Purchase limited = new Purchase();
+        limited.setId("purchase-0-limited");
+        limited.setCustomerId("customer-0");
+        limited.setProductType("PASIVE");
+        limited.setBalance(100.0);
+        limited.setHasTransactionLimitPerMonth(true);
+        limited.setTransactionLimitPerMonthNumber(1);
+        limited.setTransactionsMadeByCustomerInCurrentMonth(0);
+        backend.addPurchase(limited);
+        bankService.deposit("customer-0", "purchase-0-limited", 10).block(Duration.ofSeconds(5));
+
+        // The stub answers every delete with 404
+        StepVerifier.create(bankService.deletePurchase("purchase-0-limited"))
+                .expectError(WebClientResponseException.NotFound.class)
+                .verify(Duration.ofSeconds(5));
+
+        // The purchase still exists, and the stub still reports no operations made this month
+        expectStatus(bankService.deposit("customer-0", "purchase-0-limited", 10), HttpStatus.BAD_REQUEST);
+    }
+
+    @Test
+    void failedPurchaseDeleteKeepsTheBalance() {
+        bankService.deposit("customer-0", "purchase-0-0", 250).block(Duration.ofSeconds(5));
+
+        StepVerifier.create(bankService.deletePurchase("purchase-0-0"))
+                .expectError(WebClientResponseException.NotFound.class)
+                .verify(Duration.ofSeconds(5));
+
+        // Still the balance this instance wrote, not the unchanged one the stub would return
+        assertEquals(1250.0, balanceOf("purchase-0-0"));
+    }
+
+    @Test
+    void amountsBeyondTheBalanceRangeAreRejectedWithoutWriting() {
+        expectStatus(bankService.deposit("customer-0", "purchase-0-0", 1e17), HttpStatus.BAD_REQUEST);
+        expectStatus(bankService.deposit("customer-0", "purchase-0-0", BalanceView.toAmount(Long.MAX_VALUE)),
+                HttpStatus.BAD_REQUEST);
+
+        assertEquals(0, backend.requestCount("transactions"));
+        assertEquals(1000.0, balanceOf("purchase-0-0"));
+    }
+
+    @Test
+    void purchaseOfAnotherCustomerIsRejected() {
+        expectStatus(bankService.deposit("customer-1", "purchase-0-0", 10), HttpStatus.BAD_REQUEST);
+
+        assertEquals(0, backend.requestCount("transactions"));
+    }
+
+    @Test
+    void unknownPurchaseIsNotFound() {
+        expectStatus(bankService.deposit("customer-0", "purchase-9-9", 10), HttpStatus.NOT_FOUND);
+
+        assertEquals(0, backend.requestCount("transactions"));
+    }
+
+    @Test
+    void grantSavesThePurchaseAndUpdatesTheCustomerConcurrently() {
+        // Warms up the connections and the product catalog so only the injected latency is timed
+        bankService.grantProductToCustomer("10000001", "CUENTA_BANCARIA_AHORRO").block(Duration.ofSeconds(5));
+        Duration latency = Duration.ofMillis(500);
+        backend.reset().latency("customers", latency).latency("purchases", latency);
+
+        long started = System.nanoTime();
+        StepVerifier.create(bankService.grantProductToCustomer("10000000", "CUENTA_BANCARIA_AHORRO"))
+                .expectNextMatches(purchase -> "customer-0".equals(purchase.getCustomerId())
+                        && "PASIVE".equals(purchase.getProductType())
+                        && "CUENTA_BANCARIA_AHORRO".equals(purchase.getProductCategory()))
+                .expectComplete()
+                .verify(Duration.ofSeconds(5));
+        Duration elapsed = Duration.ofNanos(System.nanoTime() - started);
+
+        // Customer read, then both writes at once: two latencies, where one write after the other takes three
+        assertTrue(elapsed.compareTo(latency.multipliedBy(2)) >= 0, elapsed::toString);
+        assertTrue(elapsed.compareTo(latency.multipliedBy(3).minusMillis(100)) < 0, elapsed::toString);
+        assertEquals(1, backend.requestCount("purchases"));
+        assertEquals(2, backend.requestCount("customers"));
+        assertEquals(1, backend.customer("customer-0").getOwnedPasiveProductsQty());
+    }
+
+    @Test
+    void concurrentGrantsToOneCustomerKeepEveryCount() {
+        backend.latency("customers", Duration.ofMillis(20));
+
+        StepVerifier.create(Flux.range(0, 6)
+                        .flatMap(i -> bankService.grantProductToCustomer("10000000",
+                                i % 2 == 0 ? "CUENTA_BANCARIA_AHORRO" : "TARJETA_DE_CREDITO")))
+                .expectNextCount(6)
+                .expectComplete()
+                .verify(Duration.ofSeconds(10));
+
+        assertEquals(3, backend.customer("customer-0").getOwnedPasiveProductsQty());
+        assertEquals(3, backend.customer("customer-0").getOwnedActiveProductsQty());
+    }
+
+    @Test
+    void grantBatchReportsEachRecordAndReadsTheCatalogOnce() {
+        Flux<String> lines = Flux.just(
+                "{\"customerDocNumber\":\"10000000\",\"productCategory\":\"CUENTA_BANCARIA_AHORRO\"}",
+                "{\"customerDocNumber\":\"10000000\",",
+                "",
+                "{\"customerDocNumber\":\"99999999\",\"productCategory\":\"CUENTA_BANCARIA_AHORRO\"}",
+                "{\"customerDocNumber\":\"10000001\",\"productCategory\":\"UNKNOWN\"}",
+                "{\"customerDocNumber\":\"10000001\",\"productCategory\":\"tarjeta_de_credito\"}");
+
+        List<BatchResult<Purchase>> results = bankService.grantProducts(lines)
+                .collectSortedList(Comparator.comparingLong(BatchResult::getIndex))
+                .block(Duration.ofSeconds(5));
+
+        assertEquals(5, results.size());
+        assertEquals("customer-0", results.get(0).getItem().getCustomerId());
+        assertTrue(results.get(1).getError().startsWith("Malformed record"), results.get(1).getError());
+        assertTrue(results.get(2).getError().contains("Customer not found: 99999999"), results.get(2).getError());
+        assertTrue(results.get(3).getError().contains("Product not found: UNKNOWN"), results.get(3).getError());
+        assertEquals("TARJETA_DE_CREDITO", results.get(4).getItem().getProductCategory());
+        assertEquals(List.of(BatchResult.OK, BatchResult.ERROR, BatchResult.ERROR, BatchResult.ERROR, BatchResult.OK),
+                results.stream().map(BatchResult::getStatus).collect(Collectors.toList()));
+        assertEquals(1, backend.requestCount("products"));
+        assertEquals(2, backend.requestCount("purchases"));
+    }
+
+    @Test
+    void grantBatchAcceptsNdjsonAndJsonArrays() {
+        WebTestClient client = WebTestClient.bindToController(new BankController(bankService, new CacheProperties(),
+                new SimpleMeterRegistry())).build();
+
+        client.post().uri("/bank/operations/grantproduct/batch")
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .bodyValue("{\"customerDocNumber\":\"10000000\",\"productCategory\":\"CUENTA_BANCARIA_AHORRO\"}\n"
+                        + "{\"customerDocNumber\":\"99999999\",\"productCategory\":\"CUENTA_BANCARIA_AHORRO\"}\n")
+                .accept(MediaType.APPLICATION_NDJSON)
+                .exchange()
+                .expectStatus().isOk()
+                .returnResult(BatchResult.class)
+                .getResponseBody()
+                .map(BatchResult::getStatus)
+                .collectSortedList()
+                .as(StepVerifier::create)
+                .expectNext(List.of(BatchResult.ERROR, BatchResult.OK))
+                .expectComplete()
+                .verify(Duration.ofSeconds(5));
+
+        client.post().uri("/bank/operations/grantproduct/batch")
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue("[{\"customerDocNumber\":\"10000000\",\"productCategory\":\"CUENTA_BANCARIA_AHORRO\"},"
+                        + "{\"customerDocNumber\":\"10000001\",\"productCategory\":\"UNKNOWN\"}]")
+                .accept(MediaType.APPLICATION_NDJSON)
+                .exchange()
+                .expectStatus().isOk()
+                .returnResult(BatchResult.class)
+                .getResponseBody()
+                .map(BatchResult::getStatus)
+                .collectSortedList()
+                .as(StepVerifier::create)
+                .expectNext(List.of(BatchResult.ERROR, BatchResult.OK))
+                .expectComplete()
+                .verify(Duration.ofSeconds(5));
+
+        assertEquals(2, backend.requestCount("purchases"));
+    }
+
+    @Test
+    void pagesFollowTheCursorToTheLastPage() {
+        for (int i = 0; i < 3; i++) {
+            Purchase purchase = new Purchase();
+            purchase.setId("purchase-extra-" + i);
+            backend.addPurchase(purchase);
+        }
+
+        Page<Purchase> first = bankService.findPurchasesPage(2, null).block(Duration.ofSeconds(5));
+        assertEquals(List.of("purchase-0-0", "purchase-1-0"), ids(first));
+        assertNotNull(first.getNextCursor());
+
+        Page<Purchase> second = bankService.findPurchasesPage(2, first.getNextCursor()).block(Duration.ofSeconds(5));
+        assertEquals(List.of("purchase-extra-0", "purchase-extra-1"), ids(second));
+        assertNotNull(second.getNextCursor());
+
+        Page<Purchase> last = bankService.findPurchasesPage(2, second.getNextCursor()).block(Duration.ofSeconds(5));
+        assertEquals(List.of("purchase-extra-2"), ids(last));
+        assertNull(last.getNextCursor());
+
+        // A page that ends exactly at the end of the collection has no cursor either
+        Page<Purchase> exact = bankService.findPurchasesPage(5, null).block(Duration.ofSeconds(5));
+        assertEquals(5, exact.getItems().size());
+        assertNull(exact.getNextCursor());
+    }
+
+    @Test
+    void cursorOfADeletedElementIsGone() {
+        Page<Purchase> first = bankService.findPurchasesPage(1, null).block(Duration.ofSeconds(5));
+        backend.purchases().remove(0);
+
+        expectStatus(bankService.findPurchasesPage(1, first.getNextCursor()), HttpStatus.GONE);
+    }
+
+    @Test
+    void invalidLimitsAndCursorsAreBadRequests() {
+        expectStatus(bankService.findPurchasesPage(0, null), HttpStatus.BAD_REQUEST);
+        expectStatus(bankService.findPurchasesPage(1001, null), HttpStatus.BAD_REQUEST);
+        expectStatus(bankService.findPurchasesPage(2, "not base64!"), HttpStatus.BAD_REQUEST);
+        assertEquals(0, backend.requestCount("purchases"));
+
+        assertEquals(2, bankService.findPurchasesPage(1000, null).block(Duration.ofSeconds(5)).getItems().size());
+    }
+
+    @Test
+    void transactionBatchReportsEachRecordByItsIndex() {
+        backend.latency("transactions", Duration.ofMillis(300));
+        Flux<String> lines = Flux.range(0, 6)
+                .map(i -> i == 2 ? "{\"purchaseId\":" : transactionLine("purchase-" + i))
+                // The blank line takes no index
+                .concatWith(Flux.just("  ", transactionLine("purchase-6")));
+
+        long start = System.nanoTime();
+        List<BatchResult<Transaction>> results = bankService.saveTransactions(lines)
+                .collectSortedList(Comparator.comparingLong(BatchResult::getIndex))
+                .block(Duration.ofSeconds(5));
+
+        // Records are saved concurrently, yet each result still names the record it belongs to
+        assertTrue(Duration.ofNanos(System.nanoTime() - start).compareTo(Duration.ofMillis(1500)) < 0);
+        assertEquals(7, results.size());
+        for (int i = 0; i < 7; i++) {
+            BatchResult<Transaction> result = results.get(i);
+            assertEquals(i, result.getIndex());
+            if (i == 2) {
+                assertEquals(BatchResult.ERROR, result.getStatus());
+                assertTrue(result.getError().startsWith("Malformed record"), result.getError());
+            } else {
+                assertEquals(BatchResult.OK, result.getStatus());
+                assertEquals("purchase-" + i, result.getItem().getPurchaseId());
+            }
+        }
+        assertEquals(6, backend.requestCount("transactions"));
+    }
+
+    @Test
+    void transactionBatchAcceptsNdjsonAndJsonArrays() {
+        WebTestClient client = WebTestClient.bindToController(new BankController(bankService, new CacheProperties(),
+                new SimpleMeterRegistry())).build();
+
+        client.post().uri("/bank/transactions/batch")
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .bodyValue(transactionLine("purchase-0-0") + "\n{not json}\n" + transactionLine("purchase-1-0") + "\n")
+                .accept(MediaType.APPLICATION_NDJSON)
+                .exchange()
+                .expectStatus().isOk()
+                .returnResult(BatchResult.class)
+                .getResponseBody()
+                .collectSortedList(Comparator.comparingLong(BatchResult::getIndex))
+                .map(results -> results.stream().map(BatchResult::getStatus).collect(Collectors.toList()))
+                .as(StepVerifier::create)
+                .expectNext(List.of(BatchResult.OK, BatchResult.ERROR, BatchResult.OK))
+                .expectComplete()
+                .verify(Duration.ofSeconds(5));
+
+        client.post().uri("/bank/transactions/batch")
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue("[" + transactionLine("purchase-0-0") + ",\"not a transaction\"]")
+                .accept(MediaType.APPLICATION_NDJSON)
+                .exchange()
+                .expectStatus().isOk()
+                .returnResult(BatchResult.class)
+                .getResponseBody()
+                .collectSortedList(Comparator.comparingLong(BatchResult::getIndex))
+                .map(results -> results.stream().map(BatchResult::getStatus).collect(Collectors.toList()))
+                .as(StepVerifier::create)
+                .expectNext(List.of(BatchResult.OK, BatchResult.ERROR))
+                .expectComplete()
+                .verify(Duration.ofSeconds(5));
+
+        assertEquals(3, backend.requestCount("transactions"));
+    }
+
+    @Test
+    void lastKnownCustomerIsServedWhileCustomerReadsAreShed() {
+        assertEquals("customer-1", bankService.findCustomerByDocNumber("10000001").block(Duration.ofSeconds(5)).getId());
+
+        // One success and one failure in a window of two open the circuit
+        backend.failWith("customers", 500);
+        StepVerifier.create(bankService.findCustomerByDocNumber("10000000"))
+                .expectError(WebClientResponseException.InternalServerError.class)
+                .verify(Duration.ofSeconds(5));
+        long downstreamReads = backend.requestCount("customers");
+
+        StepVerifier.create(bankService.findCustomerByDocNumber("10000001"))
+                .expectNextMatches(customer -> "customer-1".equals(customer.getId()))
+                .expectComplete()
+                .verify(Duration.ofSeconds(5));
+        // Never seen, so there is nothing to fall back on
+        expectStatus(bankService.findCustomerByDocNumber("10000000"), HttpStatus.SERVICE_UNAVAILABLE);
+        assertEquals(downstreamReads, backend.requestCount("customers"));
+    }
+
+    private double balanceOf(String purchaseId) {
+        Balance balance = bankService.findBalance(purchaseId).block(Duration.ofSeconds(5));
+        return balance.getBalance();
+    }
+
+    private static String transactionLine(String purchaseId) {
+        return "{\"customerId\":\"customer-0\",\"purchaseId\":\"" + purchaseId
+                + "\",\"transactionType\":\"DEPOSIT\",\"amount\":10.0}";
+    }
+
+    private static List<String> ids(Page<Purchase> page) {
+        return page.getItems().stream().map(Purchase::getId).collect(Collectors.toList());
+    }
+
+    private static void expectStatus(Mono<?> operation, HttpStatus status) {
+        StepVerifier.create(operation)
+                .expectErrorMatches(e -> e instanceof ResponseStatusException
+                        && ((ResponseStatusException) e).getStatus() == status)
+                .verify(Duration.ofSeconds(5));
+    }
+}
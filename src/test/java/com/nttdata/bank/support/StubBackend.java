@@ -0,0 +1,282 @@
+package com.nttdata.bank.support;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.nttdata.bank.client.Customer;
+import com.nttdata.bank.client.Product;
+import com.nttdata.bank.client.Purchase;
+import com.nttdata.bank.client.Transaction;
+import com.nttdata.bank.client.enums.CustomerType;
+import com.nttdata.bank.client.enums.ProductCategory;
+import com.nttdata.bank.client.enums.ProductType;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import reactor.core.publisher.Mono;
+import reactor.netty.DisposableServer;
+import reactor.netty.http.server.HttpServer;
+import reactor.netty.http.server.HttpServerRequest;
+import reactor.netty.http.server.HttpServerResponse;
+import reactor.netty.http.server.HttpServerRoutes;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * In-process stand-in for the backend behind {@code bank.downstream.base-url}.
+ * <p>
+ * Serves {@code /products}, {@code /customers}, {@code /purchases} and {@code /transactions} from generated
+ * data, as JSON or, when the request accepts it, as Smile. Latency and an error status can be injected per
+ * resource at any time, and every request is counted per resource. Customer updates are kept and served by
+ * the reads by id and document number; other writes are only echoed back.
+ */
+public class StubBackend implements AutoCloseable {
+
+    private static final String[] RESOURCES = {"products", "customers", "purchases", "transactions"};
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final ObjectMapper smileMapper = new ObjectMapper(new SmileFactory());
+    private final Map<String, Duration> latencies = new ConcurrentHashMap<>();
+    private final Map<String, Integer> failures = new ConcurrentHashMap<>();
+    private final Map<String, AtomicLong> requests = new ConcurrentHashMap<>();
+
+    private final List<Product> products = new ArrayList<>();
+    private final List<Customer> customers = new ArrayList<>();
+    private final List<Purchase> purchases = new ArrayList<>();
+    private final List<Transaction> transactions = new ArrayList<>();
+    private final Map<String, Customer> customersById;
+    private final Map<String, Customer> customersByDocNumber;
+    private final Map<String, Purchase> purchasesById;
+    private final Map<String, Transaction> transactionsById;
+
+    private DisposableServer server;
+
+    public StubBackend() {
+        this(50, 2, 10);
+    }
+
+    public StubBackend(int customerCount, int purchasesPerCustomer, int transactionsPerPurchase) {
+        for (ProductCategory category : ProductCategory.values()) {
+            Product product = new Product();
+            product.setId("product-" + category.ordinal());
+            product.setProductCategory(category);
+            product.setProductType(category.name().startsWith("CUENTA") ? ProductType.PASIVE : ProductType.ACTIVE);
+            product.setState("ACTIVE");
+            product.setCreatedAt(new Date());
+            products.add(product);
+        }
+        for (int c = 0; c < customerCount; c++) {
+            Customer customer = new Customer();
+            customer.setId("customer-" + c);
+            customer.setDocNumber(String.valueOf(10_000_000 + c));
+            customer.setDocType("DNI");
+            customer.setName("Customer " + c);
+            customer.setCustomerType(c % 5 == 0 ? CustomerType.ENTERPRISE : CustomerType.PERSON);
+            customer.setEmail("customer" + c + "@example.com");
+            customer.setState("ACTIVE");
+            customer.setCreatedAt(new Date());
+            customers.add(customer);
+            for (int p = 0; p < purchasesPerCustomer; p++) {
+                Product product = products.get((c + p) % 3);
+                Purchase purchase = new Purchase();
+                purchase.setId("purchase-" + c + "-" + p);
+                purchase.setCustomerId(customer.getId());
+                purchase.setCustomerType(customer.getCustomerType().name());
+                purchase.setCustomerName(customer.getName());
+                purchase.setProductId(product.getId());
+                purchase.setProductType(product.getProductType().name());
+                purchase.setProductCategory(product.getProductCategory().name());
+                purchase.setAccountNo(String.valueOf(1_000_000_000L + c * 10L + p));
+                purchase.setBalance(1_000.0);
+                purchase.setState("ACTIVE");
+                purchase.setCreatedAt(new Date());
+                purchases.add(purchase);
+                for (int t = 0; t < transactionsPerPurchase; t++) {
+                    Transaction transaction = new Transaction();
+                    transaction.setId("transaction-" + c + "-" + p + "-" + t);
+                    transaction.setCustomerId(customer.getId());
+                    transaction.setPurchaseId(purchase.getId());
+                    transaction.setTransactionType(t % 2 == 0 ? "DEPOSIT" : "WITHDRAWAL");
+                    transaction.setAmount(10.0 + t);
+                    transaction.setEmittedAt(new Date());
+                    transaction.setState("DONE");
+                    transactions.add(transaction);
+                }
+            }
+        }
+        customersById = new ConcurrentHashMap<>(index(customers, Customer::getId));
+        customersByDocNumber = new ConcurrentHashMap<>(index(customers, Customer::getDocNumber));
+        purchasesById = index(purchases, Purchase::getId);
+        transactionsById = index(transactions, Transaction::getId);
+    }
+
+    public StubBackend start() {
+        return start(0);
+    }
+
+    public StubBackend start(int port) {
+        server = HttpServer.create()
+                .host("127.0.0.1")
+                .port(port)
+                .route(this::routes)
+                .bindNow();
+        return this;
+    }
+
+    public String baseUrl() {
+        return "http://127.0.0.1:" + server.port();
+    }
+
+    public StubBackend latency(String resource, Duration latency) {
+        latencies.put(resource, latency);
+        return this;
+    }
+
+    public StubBackend failWith(String resource, int status) {
+        failures.put(resource, status);
+        return this;
+    }
+
+    public StubBackend reset() {
+        latencies.clear();
+        failures.clear();
+        requests.clear();
+        return this;
+    }
+
+    // Adds a purchase to the generated data, e.g. one of a product the generator does not assign
+    public StubBackend addPurchase(Purchase purchase) {
+        purchases.add(purchase);
+        purchasesById.put(purchase.getId(), purchase);
+        return this;
+    }
+
+    public long requestCount(String resource) {
+        AtomicLong count = requests.get(resource);
+        return count == null ? 0 : count.get();
+    }
+
+    public List<Customer> customers() {
+        return customers;
+    }
+
+    // Latest state of the customer, including updates written to the stub
+    public Customer customer(String id) {
+        return customersById.get(id);
+    }
+
+    public List<Purchase> purchases() {
+        return purchases;
+    }
+
+    public List<Transaction> transactions() {
+        return transactions;
+    }
+
+    @Override
+    public void close() {
+        if (server != null) {
+            server.disposeNow();
+        }
+    }
+
+    private void routes(HttpServerRoutes routes) {
+        routes.get("/products", (req, res) -> respond("products", req, res, products))
+                .get("/products/{category}", (req, res) -> respond("products", req, res, products.stream()
+                        .filter(p -> p.getProductCategory().name().equalsIgnoreCase(req.param("category")))
+                        .findFirst().orElse(null)))
+                .get("/customers", (req, res) -> respond("customers", req, res, customers))
+                .get("/customers/type", (req, res) -> respond("customers", req, res, customers.stream()
+                        .filter(c -> c.getCustomerType().name().equals(queryParam(req, "type")))
+                        .collect(Collectors.toList())))
+                .get("/customers/just/{id}", (req, res) -> respond("customers", req, res, customersById.get(req.param("id"))))
+                .get("/customers/{docNumber}", (req, res) -> respond("customers", req, res,
+                        customersByDocNumber.get(req.param("docNumber"))))
+                .get("/purchases", (req, res) -> respond("purchases", req, res, purchases))
+                .get("/purchases/customer/{id}", (req, res) -> respond("purchases", req, res, purchases.stream()
+                        .filter(p -> p.getCustomerId().equals(req.param("id")))
+                        .collect(Collectors.toList())))
+                .get("/purchases/{id}", (req, res) -> respond("purchases", req, res, purchasesById.get(req.param("id"))))
+                .get("/transactions", (req, res) -> respond("transactions", req, res, transactions))
+                .get("/transactions/{id}", (req, res) -> respond("transactions", req, res, transactionsById.get(req.param("id"))));
+        for (String resource : RESOURCES) {
+            routes.post("/" + resource, (req, res) -> echo(resource, req, res, true))
+                    .put("/" + resource, (req, res) -> echo(resource, req, res, false))
+                    .delete("/" + resource + "/{id}", (req, res) -> respond(resource, req, res, null));
+        }
+    }
+
+    private Mono<Void> echo(String resource, HttpServerRequest req, HttpServerResponse res, boolean assignId) {
+        return req.receive().aggregate().asString(StandardCharsets.UTF_8)
+                .defaultIfEmpty("{}")
+                .flatMap(body -> {
+                    try {
+                        Map<?, ?> json = objectMapper.readValue(body, Map.class);
+                        if (assignId && json.get("id") == null) {
+                            @SuppressWarnings("unchecked")
+                            Map<String, Object> writable = (Map<String, Object>) json;
+                            writable.put("id", UUID.randomUUID().toString());
+                        }
+                        if ("customers".equals(resource) && !assignId) {
+                            Customer customer = objectMapper.convertValue(json, Customer.class);
+                            customersById.put(customer.getId(), customer);
+                            customersByDocNumber.put(customer.getDocNumber(), customer);
+                        }
+                        return respond(resource, req, res, json).then();
+                    } catch (JsonProcessingException e) {
+                        return res.status(HttpResponseStatus.BAD_REQUEST).send().then();
+                    }
+                });
+    }
+
+    private Mono<Void> respond(String resource, HttpServerRequest req, HttpServerResponse res, Object body) {
+        requests.computeIfAbsent(resource, r -> new AtomicLong()).incrementAndGet();
+        Duration latency = latencies.getOrDefault(resource, Duration.ZERO);
+        Integer failure = failures.get(resource);
+        Mono<Void> response;
+        if (failure != null) {
+            response = res.status(failure).send().then();
+        } else {
+            String accept = req.requestHeaders().get("Accept", "");
+            boolean smile = accept.contains("x-jackson-smile");
+            byte[] encoded;
+            try {
+                encoded = body == null ? new byte[0] : (smile ? smileMapper : objectMapper).writeValueAsBytes(body);
+            } catch (JsonProcessingException e) {
+                return Mono.error(e);
+            }
+            response = res.status(body == null ? HttpResponseStatus.NOT_FOUND : HttpResponseStatus.OK)
+                    .header("Content-Type", smile ? "application/x-jackson-smile" : "application/json")
+                    .sendByteArray(Mono.just(encoded))
+                    .then();
+        }
+        return latency.isZero() ? response : Mono.delay(latency).then(response);
+    }
+
+    private static String queryParam(HttpServerRequest req, String name) {
+        String uri = req.uri();
+        int query = uri.indexOf('?');
+        if (query < 0) {
+            return null;
+        }
+        for (String pair : uri.substring(query + 1).split("&")) {
+            int eq = pair.indexOf('=');
+            if (eq > 0 && pair.substring(0, eq).equals(name)) {
+                return pair.substring(eq + 1);
+            }
+        }
+        return null;
+    }
+
+    private static <T> Map<String, T> index(List<T> items, Function<T, String> key) {
+        return items.stream().collect(Collectors.toMap(key, Function.identity()));
+    }
+}